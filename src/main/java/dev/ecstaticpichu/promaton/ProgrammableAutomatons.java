@@ -3,8 +3,17 @@ package dev.ecstaticpichu.promaton;
 import dev.ecstaticpichu.promaton.block.ModBlockEntities;
 import dev.ecstaticpichu.promaton.block.ModBlocks;
 import dev.ecstaticpichu.promaton.block.ModMenuTypes;
+import dev.ecstaticpichu.promaton.command.ModCommands;
+import dev.ecstaticpichu.promaton.config.ModConfig;
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
 import dev.ecstaticpichu.promaton.entity.ModEntities;
+import dev.ecstaticpichu.promaton.entity.PickupRegistry;
+import dev.ecstaticpichu.promaton.item.ModDataComponents;
 import dev.ecstaticpichu.promaton.item.ModItems;
+import dev.ecstaticpichu.promaton.path.RegionGraph;
+import dev.ecstaticpichu.promaton.scheduler.AnchorManager;
+import dev.ecstaticpichu.promaton.scheduler.AutomatonScheduler;
+import dev.ecstaticpichu.promaton.scheduler.DormantScheduler;
 import net.fabricmc.api.ModInitializer;
 
 import org.slf4j.Logger;
@@ -25,10 +34,19 @@ public class ProgrammableAutomatons implements ModInitializer {
 		// Proceed with mild caution.
 
 		LOGGER.info("Hello Fabric world!");
+		ModConfig.load();
+		ModDataComponents.initialize();
 		ModBlocks.initialize();
 		ModBlockEntities.initialize();
 		ModEntities.initialize();
 		ModMenuTypes.initialize();
 		ModItems.registerModItems();
+		AutomatonScheduler.initialize();
+		DormantScheduler.initialize();
+		AnchorManager.initialize();
+		PickupRegistry.initialize();
+		RegionGraph.initialize();
+		BlockIndex.initialize();
+		ModCommands.initialize();
 	}
 }
\ No newline at end of file
@@ -1,11 +1,23 @@
 package dev.ecstaticpichu.promaton.block;
 
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.item.CompiledProgramComponent;
+import dev.ecstaticpichu.promaton.item.ModDataComponents;
 import dev.ecstaticpichu.promaton.item.ModItems;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import dev.ecstaticpichu.promaton.program.Diagnostic;
+import dev.ecstaticpichu.promaton.program.ProgramCache;
+import dev.ecstaticpichu.promaton.program.ProgramCompileException;
+import dev.ecstaticpichu.promaton.program.ProgramCompiler;
+import dev.ecstaticpichu.promaton.program.ProgramSource;
+import dev.ecstaticpichu.promaton.program.Trigger;
+import dev.ecstaticpichu.promaton.scheduler.AutomatonScheduler;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.core.NonNullList;
 import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.ContainerHelper;
 import net.minecraft.world.WorldlyContainer;
@@ -40,8 +52,15 @@ public class AutomatonControllerBlockEntity extends BlockEntity
     @Nullable
     private UUID automatonUuid = null;
     private String automatonName = "";
+    @Nullable
+    private UUID owner = null;
     private final List<String> logs = new ArrayList<>();
     private int activeTab = 0;
+    @Nullable
+    private CompiledProgram compiledProgram = null;
+    private boolean programDirty = true;
+    private boolean programError = false;
+    private boolean powered = false;
 
     private final ContainerData containerData = new ContainerData() {
         @Override
@@ -115,6 +134,7 @@ public class AutomatonControllerBlockEntity extends BlockEntity
     public ItemStack removeItem(int slot, int amount) {
         ItemStack result = ContainerHelper.removeItem(this.items, slot, amount);
         if (!result.isEmpty()) {
+            this.onSlotChanged(slot);
             this.setChanged();
         }
         return result;
@@ -122,14 +142,68 @@ public class AutomatonControllerBlockEntity extends BlockEntity
 
     @Override
     public ItemStack removeItemNoUpdate(int slot) {
-        return ContainerHelper.takeItem(this.items, slot);
+        ItemStack result = ContainerHelper.takeItem(this.items, slot);
+        this.onSlotChanged(slot);
+        return result;
     }
 
     @Override
     public void setItem(int slot, ItemStack stack) {
         this.items.set(slot, stack);
         stack.limitSize(this.getMaxStackSize(stack));
+        this.onSlotChanged(slot);
+        this.setChanged();
+    }
+
+    private void onSlotChanged(int slot) {
+        if (slot == SLOT_PROGRAM) {
+            this.programDirty = true;
+            if (this.level != null && !this.level.isClientSide()) {
+                // Validate right away so a broken book is reported the moment it goes in
+                this.getCompiledProgram();
+            }
+            this.wakeAutomaton();
+        }
+    }
+
+    /**
+     * Brings a parked (sleeping or waiting) automaton back into the scheduler so it sees changes
+     * to its program right away.
+     */
+    private void wakeAutomaton() {
+        AutomatonEntity automaton = this.findAutomaton();
+        if (automaton != null) {
+            AutomatonScheduler.wake(automaton);
+        }
+    }
+
+    @Nullable
+    private AutomatonEntity findAutomaton() {
+        if (this.automatonUuid != null && this.level instanceof ServerLevel serverLevel
+                && serverLevel.getEntity(this.automatonUuid) instanceof AutomatonEntity automaton) {
+            return automaton;
+        }
+        return null;
+    }
+
+    // --- Redstone ---
+
+    /**
+     * Called from {@link AutomatonControllerBlock#neighborChanged}; raises the bound automaton's
+     * redstone trigger on a rising edge.
+     */
+    public void setPowered(boolean powered) {
+        if (powered == this.powered) {
+            return;
+        }
+        this.powered = powered;
         this.setChanged();
+        if (powered) {
+            AutomatonEntity automaton = this.findAutomaton();
+            if (automaton != null) {
+                automaton.getBrain().raise(Trigger.REDSTONE);
+            }
+        }
     }
 
     @Override
@@ -159,6 +233,7 @@ public class AutomatonControllerBlockEntity extends BlockEntity
     @Override
     public void clearContent() {
         this.items.clear();
+        this.programDirty = true;
     }
 
     // --- WorldlyContainer ---
@@ -192,6 +267,7 @@ public class AutomatonControllerBlockEntity extends BlockEntity
         ContainerHelper.saveAllItems(output, this.items);
         output.putInt("Status", this.automatonStatus.getIndex());
         output.putString("AutomatonName", this.automatonName);
+        output.putBoolean("Powered", this.powered);
         if (this.automatonUuid != null) {
             long most = this.automatonUuid.getMostSignificantBits();
             long least = this.automatonUuid.getLeastSignificantBits();
@@ -201,6 +277,15 @@ public class AutomatonControllerBlockEntity extends BlockEntity
             });
         }
 
+        if (this.owner != null) {
+            long most = this.owner.getMostSignificantBits();
+            long least = this.owner.getLeastSignificantBits();
+            output.putIntArray("Owner", new int[]{
+                    (int) (most >> 32), (int) most,
+                    (int) (least >> 32), (int) least
+            });
+        }
+
         ValueOutput.TypedOutputList<String> logList = output.list("Logs", com.mojang.serialization.Codec.STRING);
         for (String entry : this.logs) {
             logList.add(entry);
@@ -212,8 +297,16 @@ public class AutomatonControllerBlockEntity extends BlockEntity
         super.loadAdditional(input);
         this.items.clear();
         ContainerHelper.loadAllItems(input, this.items);
+        // A stored image only needs its hash checked; anything else compiles on first use
+        if (this.hasCurrentImage(this.items.get(SLOT_PROGRAM))) {
+            this.compiledProgram = this.compileProgram();
+            this.programDirty = false;
+        } else {
+            this.programDirty = true;
+        }
         this.automatonStatus = AutomatonStatus.fromIndex(input.getIntOr("Status", 0));
         this.automatonName = input.getStringOr("AutomatonName", "");
+        this.powered = input.getBooleanOr("Powered", false);
 
         this.automatonUuid = null;
         input.getIntArray("AutomatonUUID").ifPresent(arr -> {
@@ -224,12 +317,90 @@ public class AutomatonControllerBlockEntity extends BlockEntity
             }
         });
 
+        this.owner = null;
+        input.getIntArray("Owner").ifPresent(arr -> {
+            if (arr.length == 4) {
+                long most = ((long) arr[0] << 32) | (arr[1] & 0xFFFFFFFFL);
+                long least = ((long) arr[2] << 32) | (arr[3] & 0xFFFFFFFFL);
+                this.owner = new UUID(most, least);
+            }
+        });
+
         this.logs.clear();
         for (String entry : input.listOrEmpty("Logs", com.mojang.serialization.Codec.STRING)) {
             this.logs.add(entry);
         }
     }
 
+    // --- Program ---
+
+    /**
+     * The compiled form of the book in {@link #SLOT_PROGRAM}, or null if the slot is empty or the
+     * book does not compile. Looked up at most once per change to the slot.
+     */
+    @Nullable
+    public CompiledProgram getCompiledProgram() {
+        if (this.programDirty) {
+            this.programDirty = false;
+            this.compiledProgram = this.compileProgram();
+        }
+        return this.compiledProgram;
+    }
+
+    @Nullable
+    private CompiledProgram compileProgram() {
+        ItemStack stack = this.items.get(SLOT_PROGRAM);
+        if (stack.isEmpty()) {
+            this.setProgramError(false);
+            return null;
+        }
+        String source = ProgramSource.read(stack);
+        CompiledProgramComponent stored = stack.get(ModDataComponents.COMPILED_PROGRAM);
+        boolean current = stored != null && stored.matches(ProgramCompiler.hashSource(source));
+        try {
+            // Identical books share one compiled image, and a book's stored image spares a recompile
+            CompiledProgram program = ProgramCache.compile(source, current ? stored.image() : null, ProgramSource::isKnownId);
+            if (!current) {
+                stack.set(ModDataComponents.COMPILED_PROGRAM, CompiledProgramComponent.of(program));
+                this.setChanged();
+            }
+            this.setProgramError(false);
+            return program;
+        } catch (ProgramCompileException e) {
+            if (stored != null) {
+                stack.remove(ModDataComponents.COMPILED_PROGRAM);
+                this.setChanged();
+            }
+            for (Diagnostic diagnostic : e.getDiagnostics()) {
+                this.addLog("Program error at " + diagnostic);
+            }
+            this.setProgramError(true);
+            return null;
+        }
+    }
+
+    public boolean hasProgramError() {
+        return programError;
+    }
+
+    private void setProgramError(boolean programError) {
+        this.programError = programError;
+        if (programError) {
+            this.setAutomatonStatus(AutomatonStatus.ERROR);
+        } else if (this.automatonStatus == AutomatonStatus.ERROR) {
+            // The automaton reports its real status on its next step
+            this.setAutomatonStatus(this.automatonUuid == null ? AutomatonStatus.DEAD : AutomatonStatus.IDLE);
+        }
+    }
+
+    /**
+     * Whether the program stack carries a compiled image that is still valid for its text.
+     */
+    private boolean hasCurrentImage(ItemStack stack) {
+        CompiledProgramComponent stored = stack.get(ModDataComponents.COMPILED_PROGRAM);
+        return stored != null && stored.matches(ProgramCompiler.hashSource(ProgramSource.read(stack)));
+    }
+
     // --- Status & State ---
 
     public AutomatonStatus getAutomatonStatus() {
@@ -265,6 +436,16 @@ public class AutomatonControllerBlockEntity extends BlockEntity
         this.setChanged();
     }
 
+    @Nullable
+    public UUID getOwner() {
+        return owner;
+    }
+
+    public void setOwner(@Nullable UUID owner) {
+        this.owner = owner;
+        this.setChanged();
+    }
+
     public String getAutomatonName() {
         return automatonName;
     }
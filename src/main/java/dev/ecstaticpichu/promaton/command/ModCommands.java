@@ -0,0 +1,71 @@
+package dev.ecstaticpichu.promaton.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import dev.ecstaticpichu.promaton.config.ModConfig;
+import dev.ecstaticpichu.promaton.program.ProgramCache;
+import dev.ecstaticpichu.promaton.scheduler.AnchorManager;
+import dev.ecstaticpichu.promaton.scheduler.AutomatonScheduler;
+import dev.ecstaticpichu.promaton.scheduler.DormantScheduler;
+import dev.ecstaticpichu.promaton.scheduler.OwnerQuotas;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.Map;
+import java.util.UUID;
+
+public class ModCommands {
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Commands for " + ProgrammableAutomatons.MOD_ID);
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> register(dispatcher));
+    }
+
+    private static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal(ProgrammableAutomatons.MOD_ID)
+                .then(Commands.literal("scheduler").executes(context -> {
+                    AutomatonScheduler.Stats stats = AutomatonScheduler.getWindowStats();
+                    String message = String.format(
+                            "Budget %.2f ms | %d parked, %d dormant, %d anchored chunks, %d cached programs | last tick %.2f ms, %d run, %d deferred | last %d ticks: avg %.2f ms, peak %.2f ms, avg %.1f run, avg %.1f deferred",
+                            ModConfig.get().tickBudgetMs,
+                            AutomatonScheduler.getParkedCount(),
+                            DormantScheduler.getDormantCount(context.getSource().getServer()),
+                            AnchorManager.getLoadedChunkCount(context.getSource().getServer()),
+                            ProgramCache.size(),
+                            AutomatonScheduler.getLastTickNanos() / 1.0E6,
+                            AutomatonScheduler.getLastTickRun(),
+                            AutomatonScheduler.getLastTickDeferred(),
+                            stats.ticks(),
+                            stats.averageNanos() / 1.0E6,
+                            stats.peakNanos() / 1.0E6,
+                            stats.averageRun(),
+                            stats.averageDeferred());
+                    context.getSource().sendSuccess(() -> Component.literal(message), false);
+                    return 1;
+                }))
+                .then(Commands.literal("quotas").executes(context -> {
+                    CommandSourceStack source = context.getSource();
+                    Map<UUID, OwnerQuotas.Account> accounts = AutomatonScheduler.getQuotas().getAccounts();
+                    if (accounts.isEmpty()) {
+                        source.sendSuccess(() -> Component.literal("No automaton owners are active"), false);
+                        return 0;
+                    }
+                    for (Map.Entry<UUID, OwnerQuotas.Account> entry : accounts.entrySet()) {
+                        OwnerQuotas.Account account = entry.getValue();
+                        ServerPlayer player = source.getServer().getPlayerList().getPlayer(entry.getKey());
+                        String name = player != null ? player.getName().getString() : entry.getKey().toString();
+                        String message = String.format("%s: %.1f ms, %d instructions, %d deferrals%s",
+                                name,
+                                account.getTotalNanos() / 1.0E6,
+                                account.getTotalInstructions(),
+                                account.getDeferrals(),
+                                account.isThrottled() ? " (throttled)" : "");
+                        source.sendSuccess(() -> Component.literal(message), false);
+                    }
+                    return accounts.size();
+                })));
+    }
+}
@@ -0,0 +1,68 @@
+package dev.ecstaticpichu.promaton.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Server configuration stored in {@code config/promaton.json}. Missing keys keep their defaults
+ * and the file is rewritten on load so new options show up for server owners.
+ */
+public class ModConfig {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static ModConfig instance = new ModConfig();
+
+    public int maxAutomatonsPerPlayer = 64;
+    public int companionEnlistRange = 64;
+    public int companionDismissRange = 64;
+    public boolean automatonsGainXP = true;
+
+    // Milliseconds of each server tick that automaton behaviour may use
+    public double tickBudgetMs = 5.0;
+
+    // Per-owner fair share: 0 splits tickBudgetMs evenly between active owners
+    public double ownerQuotaMs = 0.0;
+    public int ownerInstructionQuota = 4096;
+    public int ownerBurstTicks = 20;
+
+    // Automatons farther than this from every player step every 2, 4 or 8 ticks; 0 always runs them at full rate
+    public double fullRateRadius = 64.0;
+
+    // Longest stretch of unloaded time an automaton catches up on when its chunk loads again
+    public int maxCatchUpTicks = 72000;
+
+    public static ModConfig get() {
+        return instance;
+    }
+
+    public static void load() {
+        Path path = FabricLoader.getInstance().getConfigDir().resolve(ProgrammableAutomatons.MOD_ID + ".json");
+        ModConfig loaded = null;
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                loaded = GSON.fromJson(reader, ModConfig.class);
+            } catch (IOException | JsonParseException e) {
+                // Leave a broken file alone so the owner can fix it
+                ProgrammableAutomatons.LOGGER.error("Failed to read {}, using defaults", path, e);
+                instance = new ModConfig();
+                return;
+            }
+        }
+        instance = loaded != null ? loaded : new ModConfig();
+
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            GSON.toJson(instance, writer);
+        } catch (IOException e) {
+            ProgrammableAutomatons.LOGGER.error("Failed to write {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.block.AutomatonControllerBlockEntity;
+import dev.ecstaticpichu.promaton.block.AutomatonStatus;
+import dev.ecstaticpichu.promaton.entity.task.AutomatonTask;
+import dev.ecstaticpichu.promaton.entity.task.ChopTask;
+import dev.ecstaticpichu.promaton.entity.task.CropSchedule;
+import dev.ecstaticpichu.promaton.entity.task.FeedTask;
+import dev.ecstaticpichu.promaton.entity.task.GotoTask;
+import dev.ecstaticpichu.promaton.entity.task.HarvestTask;
+import dev.ecstaticpichu.promaton.entity.task.MineTask;
+import dev.ecstaticpichu.promaton.entity.task.PatrolTask;
+import dev.ecstaticpichu.promaton.entity.task.RetrieveTask;
+import dev.ecstaticpichu.promaton.entity.task.StoreTask;
+import dev.ecstaticpichu.promaton.entity.task.TreeFill;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import dev.ecstaticpichu.promaton.program.Condition;
+import dev.ecstaticpichu.promaton.program.Opcode;
+import dev.ecstaticpichu.promaton.program.ProgramCompiler;
+import dev.ecstaticpichu.promaton.program.ProgramDiff;
+import dev.ecstaticpichu.promaton.program.ProgramHost;
+import dev.ecstaticpichu.promaton.program.ProgramState;
+import dev.ecstaticpichu.promaton.program.ProgramVM;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import dev.ecstaticpichu.promaton.program.Trigger;
+import dev.ecstaticpichu.promaton.scheduler.AnchorManager;
+import dev.ecstaticpichu.promaton.scheduler.AutomatonScheduler;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.entity.EquipmentSlot;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.CropBlock;
+import net.minecraft.world.level.storage.ValueInput;
+import net.minecraft.world.level.storage.ValueOutput;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the bound controller's program for one automaton: owns the {@link ProgramState}, turns
+ * action instructions into {@link AutomatonTask}s and mirrors progress into the controller status.
+ */
+public class AutomatonBrain implements ProgramHost {
+
+    public static final int MAX_INSTRUCTIONS_PER_TICK = 32;
+
+    private static final double GOTO_REACH = 1.5;
+    private static final int DEFAULT_HEAL_HEALTH = 6;
+    private static final int MAX_CROP_SCHEDULES = 4;
+    private static final EquipmentSlot[] EQUIP_SLOTS = {
+            EquipmentSlot.MAINHAND, EquipmentSlot.OFFHAND,
+            EquipmentSlot.HEAD, EquipmentSlot.CHEST, EquipmentSlot.LEGS, EquipmentSlot.FEET
+    };
+
+    private final AutomatonEntity automaton;
+    private final ProgramState state = new ProgramState();
+    @Nullable
+    private CompiledProgram program = null;
+    // The image the state last ran on, kept across an empty book slot so an edited copy can be diffed
+    @Nullable
+    private CompiledProgram lastProgram = null;
+    @Nullable
+    private WaypointTable waypoints = null;
+    @Nullable
+    private ProgramFootprint footprint = null;
+    @Nullable
+    private ItemFilters filters = null;
+    @Nullable
+    private AutomatonTask task = null;
+    // Lent to each CHOP task; made on the first one
+    @Nullable
+    private TreeFill treeFill = null;
+    // Crop schedules of the fields most recently harvested, least recent first
+    private final List<CropSchedule> cropSchedules = new ArrayList<>();
+    private int taskLine = 0;
+    // Game ticks covered by the current step, handed on to the running task
+    private int elapsed = 1;
+    @Nullable
+    private AutomatonControllerBlockEntity controller = null;
+    private boolean throttled = false;
+
+    // Last seen level of each edge-triggered condition
+    private boolean inventoryFull = false;
+    private boolean lowHealth = false;
+
+    public AutomatonBrain(AutomatonEntity automaton) {
+        this.automaton = automaton;
+    }
+
+    /**
+     * @param elapsed game ticks since this automaton's previous step
+     * @return the number of program instructions executed
+     */
+    public int tick(int elapsed) {
+        this.throttled = false;
+        this.elapsed = elapsed;
+        AutomatonControllerBlockEntity controller = this.getController();
+        if (controller == null) {
+            return 0;
+        }
+        CompiledProgram current = controller.getCompiledProgram();
+        if (current != this.program) {
+            this.switchProgram(current);
+        }
+        // Companions only run the program for their enlist/dismiss (or other) trigger handlers
+        if (this.automaton.getCompanionOf() != null
+                && (this.program == null || (!this.state.isHandlingTrigger() && this.state.getPendingTriggers() == 0))) {
+            this.updateStatus(controller, AutomatonStatus.COMPANION);
+            return 0;
+        }
+        if (this.program == null) {
+            this.updateStatus(controller, controller.hasProgramError() ? AutomatonStatus.ERROR : AutomatonStatus.IDLE);
+            return 0;
+        }
+
+        int executed = ProgramVM.step(this.program, this.state, this, MAX_INSTRUCTIONS_PER_TICK);
+        this.updateStatus(controller, switch (this.state.getPhase()) {
+            case RUNNING, WAITING -> AutomatonStatus.WORKING;
+            case SLEEPING -> AutomatonStatus.SLEEPING;
+            case HALTED -> AutomatonStatus.IDLE;
+        });
+        if (this.state.getWaitUntil() != ProgramState.NO_TIME) {
+            this.automaton.stopMoving();
+            AutomatonScheduler.park(this.automaton, this.state.getWaitUntil());
+            AnchorManager.onPark(this.automaton, this.state.getWaitUntil());
+        }
+        return executed;
+    }
+
+    @Nullable
+    public CompiledProgram getProgram() {
+        return program;
+    }
+
+    public ProgramState getState() {
+        return state;
+    }
+
+    /**
+     * Takes over a state that was advanced elsewhere, e.g. while the automaton was dormant. As
+     * after a load, an action that was in progress starts over.
+     */
+    public void restore(ProgramState snapshot) {
+        this.cancelTask();
+        this.state.copyFrom(snapshot);
+        this.state.setTaskActive(false);
+        this.state.setDeadline(ProgramState.NO_TIME);
+    }
+
+    /**
+     * Called by the scheduler when this automaton is skipped because its owner is over quota.
+     * Logs once per throttling episode; the next step that actually runs ends the episode.
+     */
+    public void noteThrottled() {
+        if (!this.throttled) {
+            this.throttled = true;
+            this.log("Throttled: owner is over their automaton quota");
+        }
+    }
+
+    // --- Triggers ---
+
+    /**
+     * Queues {@code trigger} for delivery on the next step and wakes the automaton if it is parked.
+     * Triggers the current program has no handler for are ignored.
+     */
+    public void raise(Trigger trigger) {
+        if (this.program != null && !this.program.handles(trigger)) {
+            return;
+        }
+        this.state.raise(trigger);
+        AutomatonScheduler.wake(this.automaton);
+    }
+
+    /**
+     * Called whenever the automaton's inventory changes; raises {@link Trigger#INVENTORY_FULL} when
+     * it fills up.
+     */
+    public void onInventoryChanged() {
+        boolean full = this.automaton.isInventoryFull();
+        if (full != this.inventoryFull) {
+            this.inventoryFull = full;
+            if (full) {
+                this.raise(Trigger.INVENTORY_FULL);
+            }
+        }
+    }
+
+    /**
+     * Called whenever the automaton's health changes; raises {@link Trigger#LOW_HEALTH} when it
+     * drops below the program's {@code heal_health} setting.
+     */
+    public void onHealthChanged(float health) {
+        boolean low = health < this.getHealHealth();
+        if (low != this.lowHealth) {
+            this.lowHealth = low;
+            if (low) {
+                this.raise(Trigger.LOW_HEALTH);
+            }
+        }
+    }
+
+    private int getHealHealth() {
+        if (this.program == null) {
+            return DEFAULT_HEAL_HEALTH;
+        }
+        try {
+            return Integer.parseInt(this.program.getSetting("heal_health", String.valueOf(DEFAULT_HEAL_HEALTH)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_HEAL_HEALTH;
+        }
+    }
+
+    /**
+     * Moves execution onto a new program image. An edited book picks up where the old one was,
+     * including a running action, as long as the instruction it was on survived the edit.
+     */
+    private void switchProgram(@Nullable CompiledProgram next) {
+        if (this.program != null) {
+            this.lastProgram = this.program;
+        }
+        this.program = next;
+        if (next == null) {
+            // Book taken out: pause the action in case an edited copy comes straight back
+            this.automaton.stopMoving();
+            return;
+        }
+        if (this.state.belongsTo(next)) {
+            if (this.task == null) {
+                this.endTask();
+            }
+            this.lastProgram = null;
+            return;
+        }
+        if (this.lastProgram != null && this.state.getSourceHash() == this.lastProgram.getSourceHash()
+                && ProgramDiff.migrate(this.lastProgram, next, this.state)) {
+            this.taskLine = next.getLine(this.state.getPc());
+            if (this.task == null) {
+                this.endTask();
+            }
+            this.log("Program reloaded, continuing at line " + this.taskLine);
+        } else {
+            this.endTask();
+            this.state.reset(next);
+        }
+        this.lastProgram = null;
+    }
+
+    /**
+     * Drops the running action so its instruction starts over on the next step.
+     */
+    private void endTask() {
+        this.cancelTask();
+        this.state.setTaskActive(false);
+        this.state.setDeadline(ProgramState.NO_TIME);
+    }
+
+    private void updateStatus(AutomatonControllerBlockEntity controller, AutomatonStatus status) {
+        if (controller.getAutomatonStatus() != status) {
+            controller.setAutomatonStatus(status);
+        }
+    }
+
+    // --- Controller ---
+
+    @Nullable
+    public AutomatonControllerBlockEntity getController() {
+        if (this.controller != null && !this.controller.isRemoved()) {
+            return this.controller;
+        }
+        this.controller = null;
+        int[] bound = this.automaton.getBoundController();
+        if (bound == null) {
+            return null;
+        }
+        BlockPos pos = new BlockPos(bound[0], bound[1], bound[2]);
+        Level level = this.automaton.level();
+        if (level.isLoaded(pos) && level.getBlockEntity(pos) instanceof AutomatonControllerBlockEntity found) {
+            this.controller = found;
+        }
+        return this.controller;
+    }
+
+    public void invalidateController() {
+        this.controller = null;
+    }
+
+    private void log(String message) {
+        AutomatonControllerBlockEntity controller = this.getController();
+        if (controller != null) {
+            controller.addLog(message);
+        }
+    }
+
+    // --- ProgramHost ---
+
+    @Override
+    public long getGameTime() {
+        return this.automaton.level().getGameTime();
+    }
+
+    @Override
+    public long getDayTime() {
+        return this.automaton.level().getDayTime();
+    }
+
+    @Override
+    public boolean testCondition(CompiledProgram program, Condition condition) {
+        boolean result = switch (condition.kind()) {
+            case HAS -> this.countMatching(program, condition.arg()) >= condition.amount();
+            case INVENTORY_FULL -> this.automaton.isInventoryFull();
+            case HEALTH_BELOW -> this.automaton.getHealth() < condition.arg();
+            case TIME_BEFORE -> Math.floorMod(this.getDayTime(), (long) ProgramCompiler.DAY_LENGTH) < condition.arg();
+            case REDSTONE -> {
+                AutomatonControllerBlockEntity controller = this.getController();
+                yield controller != null && this.automaton.level().hasNeighborSignal(controller.getBlockPos());
+            }
+        };
+        return result != condition.negated();
+    }
+
+    @Override
+    public TaskStatus startTask(CompiledProgram program, ProgramState state, Opcode op, int a, int b, int c) {
+        this.cancelTask();
+        this.taskLine = program.getLine(state.getPc());
+        this.task = this.createTask(program, state, op, a, b, c);
+        if (this.task == null) {
+            return TaskStatus.FAILED;
+        }
+        // A task started this step has not been running for the time since the last one
+        this.elapsed = 1;
+        return this.tickTask();
+    }
+
+    @Override
+    public TaskStatus tickTask() {
+        if (this.task == null) {
+            return TaskStatus.FAILED;
+        }
+        TaskStatus status = this.task.tick(this.elapsed);
+        if (status != TaskStatus.RUNNING) {
+            this.task = null;
+            if (status == TaskStatus.FAILED && this.program != null) {
+                this.log("Line " + this.taskLine + ": " + this.program.getOpcode(this.state.getPc()) + " failed");
+            }
+        }
+        return status;
+    }
+
+    @Override
+    public void cancelTask() {
+        if (this.task != null) {
+            this.task.stop();
+            this.task = null;
+        }
+    }
+
+    @Nullable
+    private AutomatonTask createTask(CompiledProgram program, ProgramState state, Opcode op, int a, int b, int c) {
+        boolean untilDeadline = c >= 0;
+        switch (op) {
+            case GOTO:
+                return new GotoTask(this.automaton, this.waypointPos(program, state, a, b, c), GOTO_REACH);
+            case PATROL: {
+                long[] points = this.getWaypoints(program).getRoute(a);
+                return points.length == 0 ? null : new PatrolTask(this.automaton, points, untilDeadline);
+            }
+            case HARVEST: {
+                Block block = resolveBlock(program.getItem(a));
+                return block == null ? this.unknown(program.getItem(a))
+                        : new HarvestTask(this.automaton, block, this.getCropSchedule(block), untilDeadline);
+            }
+            case MINE: {
+                Block block = resolveBlock(program.getItem(a));
+                return block == null ? this.unknown(program.getItem(a)) : new MineTask(this.automaton, block, untilDeadline);
+            }
+            case CHOP: {
+                Block block = a == CompiledProgram.NONE ? null : resolveBlock(program.getItem(a));
+                if (a != CompiledProgram.NONE && block == null) {
+                    return this.unknown(program.getItem(a));
+                }
+                if (this.treeFill == null) {
+                    this.treeFill = new TreeFill();
+                }
+                return new ChopTask(this.automaton, block, this.treeFill, untilDeadline);
+            }
+            case FEED: {
+                Item food = resolveItem(program.getItem(a));
+                return food == null ? this.unknown(program.getItem(a)) : new FeedTask(this.automaton, food, untilDeadline);
+            }
+            case STORE: {
+                ItemFilters filters = this.getFilters(program);
+                return new StoreTask(this.automaton, stack -> filters.matches(a, stack));
+            }
+            case STORE_ALL: {
+                ItemFilters filters = this.getFilters(program);
+                return new StoreTask(this.automaton, stack -> a == CompiledProgram.NONE || !filters.matches(a, stack));
+            }
+            case RETRIEVE: {
+                BlockPos source = b == CompiledProgram.NONE
+                        ? this.automaton.blockPosition()
+                        : BlockPos.of(this.waypointPos(program, state, b, 0, 0));
+                ItemFilters filters = this.getFilters(program);
+                return new RetrieveTask(this.automaton, source, item -> filters.matches(a, item), c);
+            }
+            case EQUIP: {
+                EquipmentSlot slot = EQUIP_SLOTS[b];
+                return () -> this.equip(program, CompiledProgram.itemFilter(a), slot);
+            }
+            default:
+                this.log("Line " + this.taskLine + ": " + op + " is not supported yet");
+                return null;
+        }
+    }
+
+    @Nullable
+    private AutomatonTask unknown(String id) {
+        this.log("Line " + this.taskLine + ": unknown ID '" + id + "'");
+        return null;
+    }
+
+    /**
+     * The schedule for {@code crop} around where the automaton stands, made if it has not
+     * harvested there lately; null for crops that do not grow in stages.
+     */
+    @Nullable
+    private CropSchedule getCropSchedule(Block crop) {
+        if (!(crop instanceof CropBlock cropBlock)) {
+            return null;
+        }
+        BlockPos origin = this.automaton.blockPosition();
+        CropSchedule schedule = null;
+        for (int i = 0; i < this.cropSchedules.size(); i++) {
+            if (this.cropSchedules.get(i).covers(crop, origin)) {
+                schedule = this.cropSchedules.remove(i);
+                break;
+            }
+        }
+        if (schedule == null) {
+            schedule = new CropSchedule(cropBlock, origin);
+            if (this.cropSchedules.size() == MAX_CROP_SCHEDULES) {
+                this.cropSchedules.remove(0);
+            }
+        }
+        this.cropSchedules.add(schedule);
+        return schedule;
+    }
+
+    private TaskStatus equip(CompiledProgram program, int filter, EquipmentSlot slot) {
+        if (matches(program, filter, this.automaton.getItemBySlot(slot))) {
+            return TaskStatus.DONE;
+        }
+        for (int slots = this.automaton.getInventoryIndex().getOccupiedSlots(); slots != 0; slots &= slots - 1) {
+            int i = Integer.numberOfTrailingZeros(slots);
+            ItemStack stack = this.automaton.getItem(i);
+            if (matches(program, filter, stack)) {
+                ItemStack previous = this.automaton.getItemBySlot(slot);
+                this.automaton.setItemSlot(slot, stack);
+                this.automaton.setItem(i, previous);
+                return TaskStatus.DONE;
+            }
+        }
+        return TaskStatus.FAILED;
+    }
+
+    // --- Program Data ---
+
+    /**
+     * Packed position of a waypoint operand; {@link CompiledProgram#CURSOR} reads the current
+     * point of the enclosing FOR loop.
+     */
+    private long waypointPos(CompiledProgram program, ProgramState state, int waypoint, int route, int slot) {
+        WaypointTable table = this.getWaypoints(program);
+        if (waypoint == CompiledProgram.CURSOR) {
+            long[] points = table.getRoute(route);
+            if (points.length == 0) {
+                return table.get(CompiledProgram.HOME);
+            }
+            // Only out of range on a jump into the loop body from outside it, which the compiler never emits
+            return points[Math.clamp(state.getLoopCounter(slot), 0, points.length - 1)];
+        }
+        return table.get(waypoint);
+    }
+
+    WaypointTable getWaypoints(CompiledProgram program) {
+        long home = this.getHome();
+        if (this.waypoints == null || !this.waypoints.isFor(program, home)) {
+            this.waypoints = new WaypointTable(program, home);
+        }
+        return this.waypoints;
+    }
+
+    /**
+     * Chunks the current program can reach, or null while there is none.
+     */
+    @Nullable
+    public ProgramFootprint getFootprint() {
+        if (this.program == null) {
+            return null;
+        }
+        WaypointTable table = this.getWaypoints(this.program);
+        if (this.footprint == null || !this.footprint.isFor(table)) {
+            this.footprint = new ProgramFootprint(this.program, table, this.getHome());
+        }
+        return this.footprint;
+    }
+
+    private long getHome() {
+        int[] bound = this.automaton.getBoundController();
+        return bound == null ? this.automaton.blockPosition().asLong() : BlockPos.asLong(bound[0], bound[1], bound[2]);
+    }
+
+    private int countMatching(CompiledProgram program, int filter) {
+        return this.getFilters(program).count(filter, this.automaton.getInventoryIndex());
+    }
+
+    private boolean matches(CompiledProgram program, int filter, ItemStack stack) {
+        return this.getFilters(program).matches(filter, stack);
+    }
+
+    ItemFilters getFilters(CompiledProgram program) {
+        if (this.filters == null || !this.filters.isFor(program)) {
+            this.filters = new ItemFilters(program);
+        }
+        return this.filters;
+    }
+
+    @Nullable
+    static Block resolveBlock(String id) {
+        Identifier key = Identifier.tryParse(id);
+        return key == null ? null : BuiltInRegistries.BLOCK.getOptional(key).orElse(null);
+    }
+
+    @Nullable
+    private static Item resolveItem(String id) {
+        Identifier key = Identifier.tryParse(id);
+        return key == null ? null : BuiltInRegistries.ITEM.getOptional(key).orElse(null);
+    }
+
+    // --- NBT Persistence ---
+
+    public void save(ValueOutput output) {
+        ValueOutput program = output.child("Program");
+        program.putLong("Hash", this.state.getSourceHash());
+        program.putInt("Pc", this.state.getPc());
+        program.putIntArray("Loops", this.state.getLoopCounters());
+        program.putInt("ReturnPc", this.state.getReturnPc());
+        program.putInt("Atomic", this.state.getAtomicDepth());
+        program.putLong("WaitUntil", this.state.getWaitUntil());
+        program.putString("Phase", this.state.getPhase().name());
+        program.putInt("Triggers", this.state.getPendingTriggers());
+    }
+
+    public void load(ValueInput input) {
+        this.cancelTask();
+        this.program = null;
+        this.lastProgram = null;
+        input.child("Program").ifPresent(program -> {
+            this.state.setSourceHash(program.getLongOr("Hash", 0L));
+            this.state.setPc(program.getIntOr("Pc", 0));
+            this.state.setLoopCounters(program.getIntArray("Loops").orElse(new int[0]));
+            this.state.setReturnPc(program.getIntOr("ReturnPc", -1));
+            this.state.setAtomicDepth(program.getIntOr("Atomic", 0));
+            this.state.setPendingTriggers(program.getIntOr("Triggers", 0));
+            this.state.setWaitUntil(program.getLongOr("WaitUntil", ProgramState.NO_TIME));
+            this.state.setDeadline(ProgramState.NO_TIME);
+            // An interrupted action restarts from its instruction; its task object is not saved
+            this.state.setTaskActive(false);
+            try {
+                this.state.setPhase(ProgramState.Phase.valueOf(program.getStringOr("Phase", "RUNNING")));
+            } catch (IllegalArgumentException e) {
+                this.state.setPhase(ProgramState.Phase.RUNNING);
+            }
+        });
+    }
+}
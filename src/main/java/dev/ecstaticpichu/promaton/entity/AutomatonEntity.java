@@ -1,11 +1,19 @@
 package dev.ecstaticpichu.promaton.entity;
 
+import dev.ecstaticpichu.promaton.block.AutomatonControllerBlockEntity;
+import dev.ecstaticpichu.promaton.config.ModConfig;
+import dev.ecstaticpichu.promaton.program.Trigger;
+import dev.ecstaticpichu.promaton.scheduler.AnchorManager;
+import dev.ecstaticpichu.promaton.scheduler.AutomatonScheduler;
+import dev.ecstaticpichu.promaton.scheduler.TimerWheel;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.NonNullList;
 import net.minecraft.network.syncher.EntityDataAccessor;
 import net.minecraft.network.syncher.EntityDataSerializers;
 import net.minecraft.network.syncher.SynchedEntityData;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.util.Mth;
 import net.minecraft.world.Container;
 import net.minecraft.world.ContainerHelper;
 import net.minecraft.world.InteractionHand;
@@ -19,19 +27,26 @@ import net.minecraft.world.entity.decoration.Mannequin;
 import net.minecraft.world.entity.item.ItemEntity;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.inventory.ContainerData;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.storage.ValueInput;
 import net.minecraft.world.level.storage.ValueOutput;
-import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public class AutomatonEntity extends Mannequin implements Container {
 
     public static final int INVENTORY_SIZE = 27;
+    public static final int MAX_STEP_INTERVAL = 8;
 
     // Synced data fields
     private static final EntityDataAccessor<Float> DATA_HUNGER =
@@ -45,6 +60,7 @@ public class AutomatonEntity extends Mannequin implements Container {
 
     // General inventory (27 slots)
     private final NonNullList<ItemStack> inventory = NonNullList.withSize(INVENTORY_SIZE, ItemStack.EMPTY);
+    private final InventoryIndex inventoryIndex = new InventoryIndex(this.inventory);
 
     // Non-synced persistent fields
     private float foodEatenToday = 0.0f;
@@ -54,9 +70,26 @@ public class AutomatonEntity extends Mannequin implements Container {
     private String customSkin = "";
     @Nullable
     private UUID companionOf = null;
+    @Nullable
+    private UUID owner = null;
     private int companionPosition = 0;
     private int activeTab = 0;
 
+    private final AutomatonBrain brain = new AutomatonBrain(this);
+    private boolean scheduled = false;
+    private long lastStepTime = 0L;
+    // Game time this automaton was saved at, until the first tick after loading has caught up on it
+    private long savedTime = -1L;
+    // Where moveTowards last steered; kept up between steps when the automaton runs at a reduced rate
+    private boolean steering = false;
+    private double steerX, steerY, steerZ;
+    @Nullable
+    private TimerWheel.Timer<AutomatonEntity> parkedTimer = null;
+    @Nullable
+    private PickupRegistry.Registration pickupRegistration = null;
+    private final Set<ItemEntity> pendingPickups = new LinkedHashSet<>();
+    private boolean pickupRefused = false;
+
     private final ContainerData containerData = new ContainerData() {
         @Override
         public int get(int index) {
@@ -171,6 +204,11 @@ public class AutomatonEntity extends Mannequin implements Container {
 
     public void setBoundController(@Nullable int[] pos) {
         this.boundController = pos;
+        this.brain.invalidateController();
+    }
+
+    public AutomatonBrain getBrain() {
+        return brain;
     }
 
     // --- Skin ---
@@ -191,7 +229,29 @@ public class AutomatonEntity extends Mannequin implements Container {
     }
 
     public void setCompanionOf(@Nullable UUID playerUuid) {
+        UUID previous = this.companionOf;
         this.companionOf = playerUuid;
+        if (!this.level().isClientSide() && (previous == null) != (playerUuid == null)) {
+            this.brain.raise(playerUuid != null ? Trigger.ENLIST : Trigger.DISMISS);
+        }
+    }
+
+    // --- Owner ---
+
+    /**
+     * The player billed for this automaton's work: the player it is a companion of, otherwise
+     * whoever placed its controller. Remembered so it stays known while the controller is unloaded.
+     */
+    @Nullable
+    public UUID getOwner() {
+        if (this.companionOf != null) {
+            return this.companionOf;
+        }
+        AutomatonControllerBlockEntity controller = this.brain.getController();
+        if (controller != null && controller.getOwner() != null) {
+            this.owner = controller.getOwner();
+        }
+        return this.owner;
     }
 
     public int getCompanionPosition() {
@@ -211,12 +271,7 @@ public class AutomatonEntity extends Mannequin implements Container {
 
     @Override
     public boolean isEmpty() {
-        for (ItemStack stack : this.inventory) {
-            if (!stack.isEmpty()) {
-                return false;
-            }
-        }
-        return true;
+        return this.inventoryIndex.isEmpty();
     }
 
     @Override
@@ -229,12 +284,22 @@ public class AutomatonEntity extends Mannequin implements Container {
 
     @Override
     public ItemStack removeItem(int slot, int amount) {
-        return ContainerHelper.removeItem(this.inventory, slot, amount);
+        ItemStack removed = ContainerHelper.removeItem(this.inventory, slot, amount);
+        if (!removed.isEmpty()) {
+            this.inventoryIndex.update(slot);
+        }
+        this.onInventoryChanged();
+        return removed;
     }
 
     @Override
     public ItemStack removeItemNoUpdate(int slot) {
-        return ContainerHelper.takeItem(this.inventory, slot);
+        ItemStack removed = ContainerHelper.takeItem(this.inventory, slot);
+        if (!removed.isEmpty()) {
+            this.inventoryIndex.update(slot);
+        }
+        this.onInventoryChanged();
+        return removed;
     }
 
     @Override
@@ -242,6 +307,8 @@ public class AutomatonEntity extends Mannequin implements Container {
         if (slot >= 0 && slot < INVENTORY_SIZE) {
             this.inventory.set(slot, stack);
             stack.limitSize(this.getMaxStackSize(stack));
+            this.inventoryIndex.update(slot);
+            this.onInventoryChanged();
         }
     }
 
@@ -253,57 +320,292 @@ public class AutomatonEntity extends Mannequin implements Container {
     @Override
     public void clearContent() {
         this.inventory.clear();
+        this.inventoryIndex.refresh();
+        this.onInventoryChanged();
     }
 
     @Override
     public void setChanged() {
-        // No-op for entity-based container; entity data is saved via NBT methods
+        // Entity data is saved via NBT methods. Menus may have edited stacks in place, so re-index
+        this.inventoryIndex.refresh();
+        this.onInventoryChanged();
+    }
+
+    private void onInventoryChanged() {
+        if (!this.level().isClientSide()) {
+            this.brain.onInventoryChanged();
+            if (this.pickupRefused) {
+                // Items left lying for lack of room get another chance
+                this.pickupRefused = false;
+                PickupRegistry.touch(this);
+            }
+        }
     }
 
-    // --- Item Pickup ---
+    // --- Inventory Helpers ---
+
+    public InventoryIndex getInventoryIndex() {
+        return inventoryIndex;
+    }
+
+    public boolean isInventoryFull() {
+        return this.inventoryIndex.isFull();
+    }
+
+    public int countItem(Item item) {
+        return this.inventoryIndex.count(item);
+    }
+
+    public boolean consumeItem(Item item) {
+        int slots = this.inventoryIndex.getSlots(item);
+        if (slots == 0) {
+            return false;
+        }
+        int slot = Integer.numberOfTrailingZeros(slots);
+        this.inventory.get(slot).shrink(1);
+        this.inventoryIndex.update(slot);
+        this.onInventoryChanged();
+        return true;
+    }
+
+    // --- Movement & Work ---
+
+    public void moveTowards(double x, double y, double z) {
+        this.steering = true;
+        this.steerX = x;
+        this.steerY = y;
+        this.steerZ = z;
+        double dx = x - this.getX();
+        double dz = z - this.getZ();
+        double distance = Math.sqrt(dx * dx + dz * dz);
+        if (distance < 1.0E-4) {
+            return;
+        }
+        float yaw = (float) (Mth.atan2(dz, dx) * (180.0 / Math.PI)) - 90.0f;
+        this.setYRot(yaw);
+        this.setYHeadRot(yaw);
+        this.yBodyRot = yaw;
+
+        double speed = Math.min(distance, this.getAttributeValue(Attributes.MOVEMENT_SPEED) * 2.0);
+        Vec3 motion = this.getDeltaMovement();
+        this.setDeltaMovement(dx / distance * speed, motion.y, dz / distance * speed);
+        if (this.horizontalCollision && this.onGround()) {
+            this.jumpFromGround();
+        }
+    }
+
+    public void stopMoving() {
+        this.steering = false;
+        Vec3 motion = this.getDeltaMovement();
+        this.setDeltaMovement(0.0, motion.y, 0.0);
+    }
+
+    /**
+     * Breaks a block with the automaton's bare hands. The loot goes straight into the inventory;
+     * only what does not fit is dropped into the world.
+     */
+    public void breakBlock(BlockPos pos) {
+        if (!(this.level() instanceof ServerLevel serverLevel)) {
+            return;
+        }
+        BlockState state = serverLevel.getBlockState(pos);
+        if (state.isAir()) {
+            return;
+        }
+        // Same loot and side effects as destroyBlock(pos, true, this), which also breaks with an empty tool
+        BlockEntity blockEntity = state.hasBlockEntity() ? serverLevel.getBlockEntity(pos) : null;
+        List<ItemStack> drops = Block.getDrops(state, serverLevel, pos, blockEntity, this, ItemStack.EMPTY);
+        state.spawnAfterBreak(serverLevel, pos, ItemStack.EMPTY, true);
+        if (!serverLevel.destroyBlock(pos, false, this)) {
+            return;
+        }
+        for (ItemStack drop : drops) {
+            ItemStack overflow = this.addToInventory(drop);
+            if (!overflow.isEmpty()) {
+                Block.popResource(serverLevel, pos, overflow);
+            }
+        }
+    }
+
+    // --- Tick ---
+
+    @Override
+    public void setHealth(float health) {
+        super.setHealth(health);
+        // Also called from the LivingEntity constructor, before the brain exists
+        if (this.brain != null && !this.level().isClientSide()) {
+            this.brain.onHealthChanged(this.getHealth());
+        }
+    }
 
     @Override
     public void tick() {
+        if (this.parkedTimer != null) {
+            // Parked until a WAIT, SLEEP or WAKE ends; skip the living-entity tick while nothing can change
+            if (!this.isSettled()) {
+                super.tick();
+                PickupRegistry.track(this, false);
+            }
+            // Items dropped next to a sleeping automaton would despawn before it wakes
+            if (!this.pendingPickups.isEmpty()) {
+                this.pickUpPendingItems();
+            }
+            return;
+        }
         super.tick();
-        if (!this.level().isClientSide() && this.isAlive() && this.tickCount % 10 == 0) {
-            pickUpNearbyItems();
+        if (!this.level().isClientSide() && this.isAlive()) {
+            if (this.savedTime >= 0L) {
+                this.catchUp();
+            }
+            PickupRegistry.track(this, false);
+            // Not left to the behaviour step, which the scheduler may put off
+            if (!this.pendingPickups.isEmpty()) {
+                this.pickUpPendingItems();
+            }
+            if ((this.tickCount + this.getId()) % AnchorManager.REFRESH_INTERVAL == 0) {
+                AnchorManager.update(this);
+            }
+            if (this.level().getGameTime() - this.lastStepTime >= this.getStepInterval()) {
+                AutomatonScheduler.request(this);
+            } else if (this.steering) {
+                this.moveTowards(this.steerX, this.steerY, this.steerZ);
+            }
+        }
+    }
+
+    private void catchUp() {
+        long missed = this.level().getGameTime() - this.savedTime;
+        this.savedTime = -1L;
+        // Ordinary autosave-and-reload gaps are not worth simulating
+        if (missed > MAX_STEP_INTERVAL) {
+            MissedTimeSimulator.simulate(this, Math.min(missed, ModConfig.get().maxCatchUpTicks));
+        }
+    }
+
+    /**
+     * Game ticks between behaviour steps: every tick within {@code fullRateRadius} of a player,
+     * then 2, 4 and 8 ticks beyond one, two and four times that distance.
+     */
+    private int getStepInterval() {
+        double radius = ModConfig.get().fullRateRadius;
+        if (radius <= 0.0 || this.companionOf != null) {
+            return 1;
+        }
+        Player nearest = this.level().getNearestPlayer(this, -1.0);
+        if (nearest == null) {
+            return MAX_STEP_INTERVAL;
+        }
+        double distanceSqr = this.distanceToSqr(nearest);
+        int interval = 1;
+        while (interval < MAX_STEP_INTERVAL && distanceSqr > radius * radius) {
+            interval *= 2;
+            radius *= 2.0;
         }
+        return interval;
+    }
+
+    private boolean isSettled() {
+        return this.onGround()
+                && this.getDeltaMovement().horizontalDistanceSqr() < 1.0E-7
+                && this.hurtTime == 0
+                && !this.isInWater()
+                && !this.isInLava()
+                && !this.isOnFire()
+                && !this.isPassenger()
+                && this.getActiveEffects().isEmpty();
+    }
+
+    /**
+     * One step of automaton behaviour, run by the {@link AutomatonScheduler} within its tick budget.
+     *
+     * @return the number of program instructions executed
+     */
+    public int behaviourTick() {
+        long now = this.level().getGameTime();
+        // Capped so a long park or a stall does not fast-forward whatever runs next
+        int elapsed = (int) Math.max(1L, Math.min(now - this.lastStepTime, MAX_STEP_INTERVAL));
+        this.lastStepTime = now;
+        return this.brain.tick(elapsed);
+    }
+
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    public void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
+
+    @Nullable
+    public TimerWheel.Timer<AutomatonEntity> getParkedTimer() {
+        return parkedTimer;
+    }
+
+    public void setParkedTimer(@Nullable TimerWheel.Timer<AutomatonEntity> parkedTimer) {
+        this.parkedTimer = parkedTimer;
     }
 
-    private void pickUpNearbyItems() {
-        AABB pickupBox = this.getBoundingBox().inflate(2.0);
-        List<ItemEntity> items = this.level().getEntitiesOfClass(ItemEntity.class, pickupBox);
-        for (ItemEntity itemEntity : items) {
-            if (!itemEntity.isAlive()) continue;
+    @Nullable
+    public PickupRegistry.Registration getPickupRegistration() {
+        return pickupRegistration;
+    }
+
+    public void setPickupRegistration(@Nullable PickupRegistry.Registration pickupRegistration) {
+        this.pickupRegistration = pickupRegistration;
+    }
+
+    // --- Item Pickup ---
+
+    /**
+     * Called by the {@link PickupRegistry} when an item enters this automaton's pickup range; the
+     * item is collected on the automaton's next tick, parked or not.
+     */
+    public void offerPickup(ItemEntity item) {
+        this.pendingPickups.add(item);
+    }
+
+    private void pickUpPendingItems() {
+        boolean refused = false;
+        for (ItemEntity itemEntity : this.pendingPickups) {
+            // The item may have been picked up, merged or carried off since it was offered
+            if (!itemEntity.isAlive() || itemEntity.level() != this.level()
+                    || !PickupRegistry.getPickupBox(this).contains(itemEntity.position())) {
+                continue;
+            }
             ItemStack stack = itemEntity.getItem();
             ItemStack remaining = addToInventory(stack.copy());
             if (remaining.isEmpty()) {
                 itemEntity.discard();
-            } else if (remaining.getCount() < stack.getCount()) {
-                itemEntity.setItem(remaining);
+            } else {
+                refused = true;
+                if (remaining.getCount() < stack.getCount()) {
+                    itemEntity.setItem(remaining);
+                }
             }
         }
+        this.pendingPickups.clear();
+        this.pickupRefused |= refused;
     }
 
-    private ItemStack addToInventory(ItemStack stack) {
+    public ItemStack addToInventory(ItemStack stack) {
+        int before = stack.getCount();
         // Try to merge with existing stacks first
-        for (int i = 0; i < INVENTORY_SIZE && !stack.isEmpty(); i++) {
+        for (int slots = this.inventoryIndex.getPartialSlots(stack); slots != 0 && !stack.isEmpty(); slots &= slots - 1) {
+            int i = Integer.numberOfTrailingZeros(slots);
             ItemStack existing = this.inventory.get(i);
-            if (!existing.isEmpty() && ItemStack.isSameItemSameComponents(existing, stack)) {
-                int space = existing.getMaxStackSize() - existing.getCount();
-                if (space > 0) {
-                    int toAdd = Math.min(space, stack.getCount());
-                    existing.grow(toAdd);
-                    stack.shrink(toAdd);
-                }
-            }
+            int toAdd = Math.min(existing.getMaxStackSize() - existing.getCount(), stack.getCount());
+            existing.grow(toAdd);
+            stack.shrink(toAdd);
+            this.inventoryIndex.update(i);
         }
         // Then try empty slots
-        for (int i = 0; i < INVENTORY_SIZE && !stack.isEmpty(); i++) {
-            if (this.inventory.get(i).isEmpty()) {
-                this.inventory.set(i, stack.copy());
-                stack.setCount(0);
-            }
+        for (int slots = this.inventoryIndex.getFreeSlots(); slots != 0 && !stack.isEmpty(); slots &= slots - 1) {
+            int i = Integer.numberOfTrailingZeros(slots);
+            this.inventory.set(i, stack.split(stack.getMaxStackSize()));
+            this.inventoryIndex.update(i);
+        }
+        if (stack.getCount() != before) {
+            this.onInventoryChanged();
         }
         return stack;
     }
@@ -333,6 +635,7 @@ public class AutomatonEntity extends Mannequin implements Container {
                 this.inventory.set(i, ItemStack.EMPTY);
             }
         }
+        this.inventoryIndex.refresh();
         // Drop equipment explicitly (Mannequin may not have a loot table)
         for (EquipmentSlot slot : EquipmentSlot.values()) {
             ItemStack equip = this.getItemBySlot(slot);
@@ -364,6 +667,7 @@ public class AutomatonEntity extends Mannequin implements Container {
         output.putInt("SleepTicks", this.sleepTicks);
         output.putString("CustomSkin", this.customSkin);
         output.putInt("CompanionPosition", this.companionPosition);
+        output.putLong("SavedTime", this.level().getGameTime());
 
         if (this.boundController != null) {
             output.putIntArray("BoundController", this.boundController);
@@ -377,6 +681,17 @@ public class AutomatonEntity extends Mannequin implements Container {
                     (int) (least >> 32), (int) least
             });
         }
+
+        if (this.owner != null) {
+            long most = this.owner.getMostSignificantBits();
+            long least = this.owner.getLeastSignificantBits();
+            output.putIntArray("Owner", new int[]{
+                    (int) (most >> 32), (int) most,
+                    (int) (least >> 32), (int) least
+            });
+        }
+
+        this.brain.save(output);
     }
 
     @Override
@@ -386,6 +701,7 @@ public class AutomatonEntity extends Mannequin implements Container {
         // Inventory
         this.inventory.clear();
         ContainerHelper.loadAllItems(input, this.inventory);
+        this.inventoryIndex.refresh();
 
         // Synced data fields
         this.setHunger(input.getFloatOr("Hunger", 20.0f));
@@ -398,6 +714,7 @@ public class AutomatonEntity extends Mannequin implements Container {
         this.sleepTicks = input.getIntOr("SleepTicks", 0);
         this.customSkin = input.getStringOr("CustomSkin", "");
         this.companionPosition = input.getIntOr("CompanionPosition", 0);
+        this.savedTime = input.getLongOr("SavedTime", -1L);
 
         this.boundController = null;
         input.getIntArray("BoundController").ifPresent(arr -> {
@@ -414,5 +731,17 @@ public class AutomatonEntity extends Mannequin implements Container {
                 this.companionOf = new UUID(most, least);
             }
         });
+
+        this.owner = null;
+        input.getIntArray("Owner").ifPresent(arr -> {
+            if (arr.length == 4) {
+                long most = ((long) arr[0] << 32) | (arr[1] & 0xFFFFFFFFL);
+                long least = ((long) arr[2] << 32) | (arr[3] & 0xFFFFFFFFL);
+                this.owner = new UUID(most, least);
+            }
+        });
+
+        this.brain.invalidateController();
+        this.brain.load(input);
     }
 }
@@ -0,0 +1,162 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.shorts.ShortIterator;
+import it.unimi.dsi.fastutil.shorts.ShortOpenHashSet;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Where the blocks HARVEST, MINE and CHOP look for are, per chunk section, shared by every
+ * automaton in the level.
+ *
+ * <p>A section is indexed for a block the first time anyone searches it for that block: one look
+ * at its palette, and only if the block is in there, one pass over its cells. From then on every
+ * block change in the section keeps the index current, until the chunk unloads. A search then
+ * costs a lookup per section plus the matching cells, instead of a block read per position.
+ *
+ * <p>Cells are indexed {@code y << 8 | z << 4 | x} in section-local coordinates.
+ */
+public final class BlockIndex {
+
+    private static final Map<Level, Long2ObjectMap<Section>> levels = new IdentityHashMap<>();
+
+    /**
+     * What a search looks for: one block in any state, or any block with a tag.
+     */
+    public record Filter(@Nullable Block block, @Nullable TagKey<Block> tag) {
+
+        public static Filter of(Block block) {
+            return new Filter(block, null);
+        }
+
+        public static Filter of(TagKey<Block> tag) {
+            return new Filter(null, tag);
+        }
+
+        public boolean matches(BlockState state) {
+            return this.block != null ? state.is(this.block) : state.is(this.tag);
+        }
+    }
+
+    private static final class Section {
+        // Matching cells for each filter the section has been searched for
+        private final Map<Filter, ShortOpenHashSet> cells = new HashMap<>(2);
+    }
+
+    private BlockIndex() {
+    }
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Block Index for " + ProgrammableAutomatons.MOD_ID);
+        ServerChunkEvents.CHUNK_UNLOAD.register((level, chunk) -> {
+            Long2ObjectMap<Section> sections = levels.get(level);
+            if (sections == null) {
+                return;
+            }
+            for (int sectionY = level.getMinSectionY(); sectionY <= level.getMaxSectionY(); sectionY++) {
+                sections.remove(SectionPos.asLong(chunk.getPos().x, sectionY, chunk.getPos().z));
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> levels.clear());
+    }
+
+    /**
+     * Called for every block change in a server level.
+     */
+    public static void onBlockChanged(Level level, BlockPos pos, BlockState previous, BlockState state) {
+        Long2ObjectMap<Section> sections = levels.get(level);
+        Section section = sections == null ? null : sections.get(SectionPos.asLong(pos));
+        if (section == null) {
+            return;
+        }
+        short cell = (short) ((pos.getY() & 15) << 8 | (pos.getZ() & 15) << 4 | (pos.getX() & 15));
+        for (Map.Entry<Filter, ShortOpenHashSet> entry : section.cells.entrySet()) {
+            boolean was = entry.getKey().matches(previous);
+            if (was != entry.getKey().matches(state)) {
+                if (was) {
+                    entry.getValue().remove(cell);
+                } else {
+                    entry.getValue().add(cell);
+                }
+            }
+        }
+    }
+
+    // --- Searches ---
+
+    /**
+     * Positions of the blocks matching {@code filter} between {@code min} and {@code max}
+     * inclusive, in no particular order. Chunks that are not loaded are left out. The list is a
+     * copy, so the blocks may be changed while going through it.
+     */
+    public static LongList find(Level level, Filter filter, BlockPos min, BlockPos max) {
+        LongArrayList found = new LongArrayList();
+        Long2ObjectMap<Section> sections = levels.computeIfAbsent(level, key -> new Long2ObjectOpenHashMap<>());
+        int minY = Math.max(level.getMinSectionY(), SectionPos.blockToSectionCoord(min.getY()));
+        int maxY = Math.min(level.getMaxSectionY(), SectionPos.blockToSectionCoord(max.getY()));
+        for (int chunkX = SectionPos.blockToSectionCoord(min.getX()); chunkX <= SectionPos.blockToSectionCoord(max.getX()); chunkX++) {
+            for (int chunkZ = SectionPos.blockToSectionCoord(min.getZ()); chunkZ <= SectionPos.blockToSectionCoord(max.getZ()); chunkZ++) {
+                LevelChunk chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                for (int sectionY = minY; sectionY <= maxY; sectionY++) {
+                    int originX = SectionPos.sectionToBlockCoord(chunkX);
+                    int originY = SectionPos.sectionToBlockCoord(sectionY);
+                    int originZ = SectionPos.sectionToBlockCoord(chunkZ);
+                    ShortOpenHashSet cells = getCells(sections, chunk, sectionY, filter);
+                    for (ShortIterator it = cells.iterator(); it.hasNext(); ) {
+                        int cell = it.nextShort();
+                        int x = originX + (cell & 15);
+                        int y = originY + (cell >> 8);
+                        int z = originZ + ((cell >> 4) & 15);
+                        if (x >= min.getX() && x <= max.getX() && y >= min.getY() && y <= max.getY()
+                                && z >= min.getZ() && z <= max.getZ()) {
+                            found.add(BlockPos.asLong(x, y, z));
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static ShortOpenHashSet getCells(Long2ObjectMap<Section> sections, LevelChunk chunk, int sectionY, Filter filter) {
+        Section section = sections.computeIfAbsent(SectionPos.asLong(chunk.getPos().x, sectionY, chunk.getPos().z), key -> new Section());
+        ShortOpenHashSet cells = section.cells.get(filter);
+        if (cells != null) {
+            return cells;
+        }
+        cells = new ShortOpenHashSet();
+        LevelChunkSection blocks = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+        PalettedContainer<BlockState> states = blocks.getStates();
+        if (!blocks.hasOnlyAir() && states.maybeHas(filter::matches)) {
+            for (int cell = 0; cell < 4096; cell++) {
+                if (filter.matches(states.get(cell & 15, cell >> 8, (cell >> 4) & 15))) {
+                    cells.add((short) cell);
+                }
+            }
+        }
+        section.cells.put(filter, cells);
+        return cells;
+    }
+}
@@ -0,0 +1,179 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.NonNullList;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incrementally maintained lookup tables over an automaton's inventory: which slots are free,
+ * which hold partial stacks of a given item and components, and how much of each item is held in
+ * total. Slot sets are bitmasks, so the inventory may have at most 32 slots.
+ *
+ * <p>The index only learns about a slot through {@link #update(int)}; whoever changes a stack,
+ * including in place, has to call it (or {@link #refresh()} when it is not known which slot).
+ */
+public final class InventoryIndex {
+
+    private static final Hash.Strategy<ItemStack> ITEM_AND_COMPONENTS = new Hash.Strategy<>() {
+        @Override
+        public int hashCode(ItemStack stack) {
+            return stack == null ? 0 : ItemStack.hashItemAndComponents(stack);
+        }
+
+        @Override
+        public boolean equals(ItemStack a, ItemStack b) {
+            return a == b || (a != null && b != null && ItemStack.isSameItemSameComponents(a, b));
+        }
+    };
+
+    private final NonNullList<ItemStack> slots;
+    private final int allSlots;
+    // What each slot held when it was last indexed: a single-item copy and the count
+    private final ItemStack[] keys;
+    private final int[] counts;
+    private int free;
+    private int partial;
+    private final Object2IntOpenCustomHashMap<ItemStack> partialByKey = new Object2IntOpenCustomHashMap<>(ITEM_AND_COMPONENTS);
+    private final Map<Item, Holding> byItem = new Reference2ObjectOpenHashMap<>();
+
+    private static final class Holding {
+        private int slots;
+        private int total;
+    }
+
+    public InventoryIndex(NonNullList<ItemStack> slots) {
+        if (slots.size() > Integer.SIZE) {
+            throw new IllegalArgumentException("Inventory too large to index: " + slots.size());
+        }
+        this.slots = slots;
+        this.allSlots = slots.size() == Integer.SIZE ? -1 : (1 << slots.size()) - 1;
+        this.keys = new ItemStack[slots.size()];
+        this.counts = new int[slots.size()];
+        Arrays.fill(this.keys, ItemStack.EMPTY);
+        this.free = this.allSlots;
+        this.refresh();
+    }
+
+    // --- Updates ---
+
+    /**
+     * Re-indexes one slot against its current contents. Cheap when nothing changed.
+     */
+    public void update(int slot) {
+        ItemStack stack = this.slots.get(slot);
+        ItemStack key = this.keys[slot];
+        boolean sameKey = !stack.isEmpty() && !key.isEmpty() && ItemStack.isSameItemSameComponents(key, stack);
+        if (sameKey && this.counts[slot] == stack.getCount()) {
+            return;
+        }
+        if (stack.isEmpty() && key.isEmpty()) {
+            return;
+        }
+        this.remove(slot);
+        this.add(slot, stack, sameKey ? key : stack.copyWithCount(1));
+    }
+
+    public void refresh() {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            this.update(slot);
+        }
+    }
+
+    private void remove(int slot) {
+        ItemStack key = this.keys[slot];
+        if (key.isEmpty()) {
+            return;
+        }
+        int bit = 1 << slot;
+        Holding holding = this.byItem.get(key.getItem());
+        holding.slots &= ~bit;
+        holding.total -= this.counts[slot];
+        if (holding.slots == 0) {
+            this.byItem.remove(key.getItem());
+        }
+        if ((this.partial & bit) != 0) {
+            this.partial &= ~bit;
+            int remaining = this.partialByKey.getInt(key) & ~bit;
+            if (remaining == 0) {
+                this.partialByKey.removeInt(key);
+            } else {
+                this.partialByKey.put(key, remaining);
+            }
+        }
+        this.keys[slot] = ItemStack.EMPTY;
+        this.counts[slot] = 0;
+        this.free |= bit;
+    }
+
+    private void add(int slot, ItemStack stack, ItemStack key) {
+        if (stack.isEmpty()) {
+            return;
+        }
+        int bit = 1 << slot;
+        this.free &= ~bit;
+        this.keys[slot] = key;
+        this.counts[slot] = stack.getCount();
+        Holding holding = this.byItem.computeIfAbsent(stack.getItem(), item -> new Holding());
+        holding.slots |= bit;
+        holding.total += stack.getCount();
+        if (stack.getCount() < stack.getMaxStackSize()) {
+            this.partial |= bit;
+            this.partialByKey.put(key, this.partialByKey.getInt(key) | bit);
+        }
+    }
+
+    // --- Queries ---
+
+    public boolean isEmpty() {
+        return this.free == this.allSlots;
+    }
+
+    /**
+     * True when every slot holds a full stack, so nothing at all can be added.
+     */
+    public boolean isFull() {
+        return this.free == 0 && this.partial == 0;
+    }
+
+    public int getFreeSlots() {
+        return this.free;
+    }
+
+    public int getOccupiedSlots() {
+        return this.allSlots & ~this.free;
+    }
+
+    /**
+     * Slots holding fewer than a full stack of the same item and components as {@code stack}.
+     */
+    public int getPartialSlots(ItemStack stack) {
+        return stack.isEmpty() ? 0 : this.partialByKey.getInt(stack);
+    }
+
+    /**
+     * Slots holding {@code item}, whatever its components.
+     */
+    public int getSlots(Item item) {
+        Holding holding = this.byItem.get(item);
+        return holding == null ? 0 : holding.slots;
+    }
+
+    public int count(Item item) {
+        Holding holding = this.byItem.get(item);
+        return holding == null ? 0 : holding.total;
+    }
+
+    /**
+     * Every distinct item currently held.
+     */
+    public Set<Item> getItems() {
+        return this.byItem.keySet();
+    }
+}
@@ -0,0 +1,90 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A program's item filters bound to the item registry: plain items resolved to their {@link Item},
+ * categories flattened into bitsets over registry IDs. Testing a stack against either is a single
+ * comparison or bit lookup.
+ */
+public final class ItemFilters {
+
+    private final CompiledProgram program;
+    private final Item[] items;
+    private final long[][] categories;
+
+    public ItemFilters(CompiledProgram program) {
+        this.program = program;
+        this.items = new Item[program.getItemCount()];
+        for (int i = 0; i < this.items.length; i++) {
+            this.items[i] = resolve(program.getItem(i));
+        }
+        this.categories = new long[program.getCategoryCount()][];
+        for (int i = 0; i < this.categories.length; i++) {
+            long[] bits = new long[0];
+            for (String id : program.getCategoryItems(i)) {
+                Item item = resolve(id);
+                if (item == null) {
+                    continue;
+                }
+                int registryId = BuiltInRegistries.ITEM.getId(item);
+                int word = registryId >>> 6;
+                if (word >= bits.length) {
+                    bits = Arrays.copyOf(bits, word + 1);
+                }
+                bits[word] |= 1L << registryId;
+            }
+            this.categories[i] = bits;
+        }
+    }
+
+    public boolean isFor(CompiledProgram program) {
+        return this.program == program;
+    }
+
+    public boolean matches(int filter, ItemStack stack) {
+        return !stack.isEmpty() && this.matches(filter, stack.getItem());
+    }
+
+    public boolean matches(int filter, Item item) {
+        int index = CompiledProgram.filterIndex(filter);
+        if (!CompiledProgram.isCategoryFilter(filter)) {
+            return item == this.items[index];
+        }
+        int registryId = BuiltInRegistries.ITEM.getId(item);
+        long[] bits = this.categories[index];
+        int word = registryId >>> 6;
+        return word < bits.length && (bits[word] & (1L << registryId)) != 0;
+    }
+
+    /**
+     * How many matching items {@code inventory} holds: a single lookup for plain items, one bit
+     * test per distinct held item for categories.
+     */
+    public int count(int filter, InventoryIndex inventory) {
+        int index = CompiledProgram.filterIndex(filter);
+        if (!CompiledProgram.isCategoryFilter(filter)) {
+            return this.items[index] == null ? 0 : inventory.count(this.items[index]);
+        }
+        int count = 0;
+        for (Item item : inventory.getItems()) {
+            if (this.matches(filter, item)) {
+                count += inventory.count(item);
+            }
+        }
+        return count;
+    }
+
+    @Nullable
+    private static Item resolve(String id) {
+        Identifier key = Identifier.tryParse(id);
+        return key == null ? null : BuiltInRegistries.ITEM.getOptional(key).orElse(null);
+    }
+}
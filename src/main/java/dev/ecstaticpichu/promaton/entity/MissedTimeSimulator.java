@@ -0,0 +1,241 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.block.AutomatonControllerBlockEntity;
+import dev.ecstaticpichu.promaton.entity.task.ContainerAccess;
+import dev.ecstaticpichu.promaton.entity.task.StorePlan;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import dev.ecstaticpichu.promaton.program.Opcode;
+import dev.ecstaticpichu.promaton.program.ProgramCompiler;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.Container;
+import net.minecraft.world.food.FoodProperties;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.CropBlock;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.List;
+
+/**
+ * Catches an automaton up on time spent in an unloaded chunk, in one step when it loads again.
+ *
+ * <p>Nothing is replayed tick by tick. The missed interval is cut into whole in-game days, and
+ * each day is settled in closed form: hunger and saturation drain at the rate its rest status
+ * allows, it eats from its inventory to stay fed, and a night slept or missed updates its rest.
+ * Crops its program harvests grow by their expected number of stages, and every full cycle is
+ * harvested, replanted and, if the program stores, carried to its chest.
+ */
+public final class MissedTimeSimulator {
+
+    private static final int DAY_LENGTH = ProgramCompiler.DAY_LENGTH;
+    private static final int MIDNIGHT = 18000;
+    private static final float MAX_HUNGER = 20.0f;
+
+    // Hunger points drained per day: three loaves of bread when tired, two when well rested
+    private static final float TIRED_DRAIN = 15.0f;
+    private static final float RESTED_DRAIN = 12.5f;
+    private static final float WELL_RESTED_DRAIN = 10.0f;
+
+    // Expected growth stages per crop per tick: default randomTickSpeed of 3 random ticks per
+    // 16^3 section, and the growth roll of a crop on hydrated farmland in a row of its own kind
+    private static final double RANDOM_TICKS_PER_BLOCK = 3.0 / 4096.0;
+    private static final double GROWTH_CHANCE = 1.0 / 13.0;
+
+    // Same search area as HarvestTask
+    private static final int HARVEST_RADIUS = 8;
+    private static final int HARVEST_VERTICAL_RADIUS = 2;
+
+    private MissedTimeSimulator() {
+    }
+
+    public static void simulate(AutomatonEntity automaton, long missed) {
+        if (!(automaton.level() instanceof ServerLevel level) || missed <= 0) {
+            return;
+        }
+        CompiledProgram program = null;
+        AutomatonControllerBlockEntity controller = automaton.getBrain().getController();
+        if (controller != null && automaton.getCompanionOf() == null) {
+            program = controller.getCompiledProgram();
+        }
+
+        boolean sleeps = program != null && contains(program, Opcode.SLEEP);
+        long day = level.getDayTime() - missed;
+        long end = level.getDayTime();
+        while (day < end) {
+            long dayEnd = Math.min(end, Math.floorDiv(day, DAY_LENGTH) * DAY_LENGTH + DAY_LENGTH);
+            drain(automaton, (dayEnd - day) * drainPerDay(automaton.getRestStatus()) / DAY_LENGTH);
+            long midnight = Math.floorDiv(day, DAY_LENGTH) * DAY_LENGTH + MIDNIGHT;
+            if (day <= midnight && midnight < dayEnd) {
+                rest(automaton, sleeps);
+            }
+            if (dayEnd < end) {
+                automaton.setFoodEatenToday(0.0f);
+            }
+            day = dayEnd;
+        }
+
+        if (program != null) {
+            harvest(level, automaton, program, missed);
+        }
+    }
+
+    // --- Hunger & Rest ---
+
+    private static float drainPerDay(String restStatus) {
+        return switch (restStatus) {
+            case "well_rested" -> WELL_RESTED_DRAIN;
+            case "rested" -> RESTED_DRAIN;
+            default -> TIRED_DRAIN;
+        };
+    }
+
+    private static void drain(AutomatonEntity automaton, float exhaustion) {
+        float saturation = automaton.getSaturation();
+        float fromSaturation = Math.min(saturation, exhaustion);
+        automaton.setSaturation(saturation - fromSaturation);
+        float hunger = Math.max(0.0f, automaton.getHunger() - (exhaustion - fromSaturation));
+
+        // Eat whole items, as the automaton would have over the day, while one fits without waste
+        InventoryIndex index = automaton.getInventoryIndex();
+        for (int slots = index.getOccupiedSlots(); slots != 0; slots &= slots - 1) {
+            int slot = Integer.numberOfTrailingZeros(slots);
+            ItemStack stack = automaton.getItem(slot);
+            FoodProperties food = stack.get(DataComponents.FOOD);
+            if (food == null || food.nutrition() <= 0) {
+                continue;
+            }
+            int eaten = Math.min(stack.getCount(), (int) ((MAX_HUNGER - hunger) / food.nutrition()));
+            if (eaten <= 0) {
+                continue;
+            }
+            automaton.removeItem(slot, eaten);
+            hunger += eaten * food.nutrition();
+            automaton.setSaturation(Math.min(hunger, automaton.getSaturation() + eaten * food.saturation()));
+            automaton.setFoodEatenToday(automaton.getFoodEatenToday() + eaten * food.nutrition());
+        }
+        automaton.setHunger(hunger);
+    }
+
+    private static void rest(AutomatonEntity automaton, boolean slept) {
+        if (!slept) {
+            automaton.setRestStatus("tired");
+        } else {
+            automaton.setRestStatus(automaton.getRestStatus().equals("tired") ? "rested" : "well_rested");
+        }
+    }
+
+    // --- Crops ---
+
+    private static void harvest(ServerLevel level, AutomatonEntity automaton, CompiledProgram program, long missed) {
+        double stages = missed * RANDOM_TICKS_PER_BLOCK * GROWTH_CHANCE;
+        List<Container> chests = findStorage(level, automaton, program);
+        ItemFilters filters = automaton.getBrain().getFilters(program);
+        int storeFilter = storeFilter(program);
+        BlockPos origin = automaton.blockPosition();
+        BlockPos min = origin.offset(-HARVEST_RADIUS, -HARVEST_VERTICAL_RADIUS, -HARVEST_RADIUS);
+        BlockPos max = origin.offset(HARVEST_RADIUS, HARVEST_VERTICAL_RADIUS, HARVEST_RADIUS);
+        if (!level.hasChunksAt(min, max)) {
+            // Neighbouring chunks are not in yet; better to skip the crops than to load them from here
+            return;
+        }
+
+        for (int pc = 0; pc < program.getInstructionCount(); pc++) {
+            if (program.getOpcode(pc) != Opcode.HARVEST
+                    || !(AutomatonBrain.resolveBlock(program.getItem(program.getOperand(pc, 0))) instanceof CropBlock crop)) {
+                continue;
+            }
+            List<ItemStack> yield = null;
+            LongList crops = BlockIndex.find(level, BlockIndex.Filter.of(crop), min, max);
+            for (int n = 0; n < crops.size(); n++) {
+                BlockPos pos = BlockPos.of(crops.getLong(n));
+                BlockState state = level.getBlockState(pos);
+                double grown = ageOf(crop, state) + stages;
+                int harvests = (int) (grown / crop.getMaxAge());
+                if (harvests == 0 || automaton.isInventoryFull()) {
+                    BlockState grownState = crop.getStateForAge(Math.min(crop.getMaxAge(), (int) grown));
+                    if (grownState != state) {
+                        level.setBlock(pos, grownState, Block.UPDATE_CLIENTS);
+                    }
+                    continue;
+                }
+                if (yield == null) {
+                    // One roll of the loot table stands in for the expected drops of every harvest
+                    yield = Block.getDrops(crop.getStateForAge(crop.getMaxAge()), level, pos, null, automaton, ItemStack.EMPTY);
+                }
+                for (ItemStack drop : yield) {
+                    ItemStack overflow = automaton.addToInventory(drop.copyWithCount(drop.getCount() * harvests));
+                    if (!overflow.isEmpty() && !chests.isEmpty()) {
+                        store(automaton, chests, filters, storeFilter);
+                        overflow = automaton.addToInventory(overflow);
+                    }
+                    if (!overflow.isEmpty()) {
+                        Block.popResource(level, pos, overflow);
+                    }
+                }
+                boolean replanted = true;
+                for (int i = 0; i < harvests && replanted; i++) {
+                    replanted = automaton.consumeItem(crop.asItem());
+                }
+                int age = (int) (grown - harvests * crop.getMaxAge());
+                level.setBlock(pos, replanted ? crop.getStateForAge(age) : Blocks.AIR.defaultBlockState(), Block.UPDATE_CLIENTS);
+            }
+        }
+        if (!chests.isEmpty()) {
+            store(automaton, chests, filters, storeFilter);
+        }
+    }
+
+    private static int ageOf(CropBlock crop, BlockState state) {
+        for (int age = 0; age < crop.getMaxAge(); age++) {
+            if (crop.getStateForAge(age) == state) {
+                return age;
+            }
+        }
+        return crop.getMaxAge();
+    }
+
+    // --- Storage ---
+
+    /**
+     * Containers around the waypoint the program walks to right before its first STORE_ALL.
+     */
+    private static List<Container> findStorage(ServerLevel level, AutomatonEntity automaton, CompiledProgram program) {
+        for (int pc = 1; pc < program.getInstructionCount(); pc++) {
+            if (program.getOpcode(pc) == Opcode.STORE_ALL && program.getOpcode(pc - 1) == Opcode.GOTO
+                    && program.getOperand(pc - 1, 0) != CompiledProgram.CURSOR) {
+                long pos = automaton.getBrain().getWaypoints(program).get(program.getOperand(pc - 1, 0));
+                return ContainerAccess.findContainers(level, BlockPos.of(pos));
+            }
+        }
+        return List.of();
+    }
+
+    private static int storeFilter(CompiledProgram program) {
+        for (int pc = 0; pc < program.getInstructionCount(); pc++) {
+            if (program.getOpcode(pc) == Opcode.STORE_ALL) {
+                return program.getOperand(pc, 0);
+            }
+        }
+        return CompiledProgram.NONE;
+    }
+
+    /**
+     * STORE_ALL: everything not matching {@code keep} goes into {@code chests}.
+     */
+    private static void store(AutomatonEntity automaton, List<Container> chests, ItemFilters filters, int keep) {
+        StorePlan.storeAll(automaton, chests, stack -> keep == CompiledProgram.NONE || !filters.matches(keep, stack));
+    }
+
+    private static boolean contains(CompiledProgram program, Opcode op) {
+        for (int pc = 0; pc < program.getInstructionCount(); pc++) {
+            if (program.getOpcode(pc) == op) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
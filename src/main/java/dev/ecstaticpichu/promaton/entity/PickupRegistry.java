@@ -0,0 +1,221 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells automatons about items that come within their pickup range, so nobody has to scan for them.
+ *
+ * <p>Every automaton is registered in the chunk sections its pickup box overlaps. Items look up
+ * their own section when they spawn or move; an item lying still only checks again once an
+ * automaton in its section has moved, which bumps the section's generation. Automatons re-register
+ * at most every {@link #TRACK_INTERVAL} ticks while walking, so a resting item is noticed at the
+ * same rate the old periodic scan had, while items that fall into range are seen straight away.
+ */
+public final class PickupRegistry {
+
+    public static final double PICKUP_RANGE = 2.0;
+    private static final int TRACK_INTERVAL = 5;
+
+    private static final Map<Level, Long2ObjectMap<Section>> levels = new IdentityHashMap<>();
+    private static int generations = 0;
+
+    private static final class Section {
+        private final List<AutomatonEntity> automatons = new ArrayList<>(2);
+        private int generation;
+    }
+
+    /**
+     * Where an automaton is registered; held by the automaton itself, like a parked timer.
+     */
+    public static final class Registration {
+        private final Level level;
+        private int minX, minY, minZ, maxX, maxY, maxZ;
+        private double x, y, z;
+        private int nextTrackTick;
+
+        private Registration(Level level) {
+            this.level = level;
+        }
+    }
+
+    private PickupRegistry() {
+    }
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Pickup Registry for " + ProgrammableAutomatons.MOD_ID);
+        ServerEntityEvents.ENTITY_LOAD.register((entity, level) -> {
+            if (entity instanceof AutomatonEntity automaton) {
+                track(automaton, true);
+            } else if (entity instanceof ItemEntity item) {
+                onItemMoved(item);
+            }
+        });
+        ServerEntityEvents.ENTITY_UNLOAD.register((entity, level) -> {
+            if (entity instanceof AutomatonEntity automaton) {
+                untrack(automaton);
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            levels.clear();
+            generations = 0;
+        });
+    }
+
+    public static AABB getPickupBox(AutomatonEntity automaton) {
+        return automaton.getBoundingBox().inflate(PICKUP_RANGE);
+    }
+
+    // --- Automatons ---
+
+    /**
+     * Brings an automaton's registration up to date with where it stands. Cheap while it stands
+     * still; called every server-side entity tick.
+     */
+    public static void track(AutomatonEntity automaton, boolean force) {
+        Registration registration = automaton.getPickupRegistration();
+        if (registration != null && registration.level != automaton.level()) {
+            untrack(automaton);
+            registration = null;
+        }
+        if (registration == null) {
+            registration = new Registration(automaton.level());
+            automaton.setPickupRegistration(registration);
+        } else if (!force && (automaton.tickCount < registration.nextTrackTick
+                || (automaton.getX() == registration.x && automaton.getY() == registration.y
+                && automaton.getZ() == registration.z))) {
+            return;
+        } else {
+            remove(registration, automaton);
+        }
+
+        AABB box = getPickupBox(automaton);
+        registration.minX = SectionPos.blockToSectionCoord(box.minX);
+        registration.minY = SectionPos.blockToSectionCoord(box.minY);
+        registration.minZ = SectionPos.blockToSectionCoord(box.minZ);
+        registration.maxX = SectionPos.blockToSectionCoord(box.maxX);
+        registration.maxY = SectionPos.blockToSectionCoord(box.maxY);
+        registration.maxZ = SectionPos.blockToSectionCoord(box.maxZ);
+        registration.x = automaton.getX();
+        registration.y = automaton.getY();
+        registration.z = automaton.getZ();
+        registration.nextTrackTick = automaton.tickCount + TRACK_INTERVAL;
+
+        Long2ObjectMap<Section> sections = levels.computeIfAbsent(registration.level, level -> new Long2ObjectOpenHashMap<>());
+        for (int x = registration.minX; x <= registration.maxX; x++) {
+            for (int y = registration.minY; y <= registration.maxY; y++) {
+                for (int z = registration.minZ; z <= registration.maxZ; z++) {
+                    Section section = sections.computeIfAbsent(SectionPos.asLong(x, y, z), key -> new Section());
+                    section.automatons.add(automaton);
+                    section.generation = ++generations;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes every item around the automaton check again, e.g. once its full inventory has room.
+     */
+    public static void touch(AutomatonEntity automaton) {
+        Registration registration = automaton.getPickupRegistration();
+        Long2ObjectMap<Section> sections = registration == null ? null : levels.get(registration.level);
+        if (sections == null) {
+            return;
+        }
+        for (int x = registration.minX; x <= registration.maxX; x++) {
+            for (int y = registration.minY; y <= registration.maxY; y++) {
+                for (int z = registration.minZ; z <= registration.maxZ; z++) {
+                    Section section = sections.get(SectionPos.asLong(x, y, z));
+                    if (section != null) {
+                        section.generation = ++generations;
+                    }
+                }
+            }
+        }
+    }
+
+    public static void untrack(AutomatonEntity automaton) {
+        Registration registration = automaton.getPickupRegistration();
+        if (registration != null) {
+            remove(registration, automaton);
+            automaton.setPickupRegistration(null);
+        }
+    }
+
+    private static void remove(Registration registration, AutomatonEntity automaton) {
+        Long2ObjectMap<Section> sections = levels.get(registration.level);
+        if (sections == null) {
+            return;
+        }
+        for (int x = registration.minX; x <= registration.maxX; x++) {
+            for (int y = registration.minY; y <= registration.maxY; y++) {
+                for (int z = registration.minZ; z <= registration.maxZ; z++) {
+                    long key = SectionPos.asLong(x, y, z);
+                    Section section = sections.get(key);
+                    if (section != null && section.automatons.remove(automaton) && section.automatons.isEmpty()) {
+                        sections.remove(key);
+                    }
+                }
+            }
+        }
+        if (sections.isEmpty()) {
+            levels.remove(registration.level);
+        }
+    }
+
+    // --- Items ---
+
+    /**
+     * Called at the end of every server-side item tick.
+     *
+     * @param seen the section generation this item last checked against
+     * @return the generation to pass next time
+     */
+    public static int onItemTick(ItemEntity item, int seen) {
+        if (levels.isEmpty() || item.isRemoved()) {
+            return seen;
+        }
+        boolean moved = item.getX() != item.xo || item.getY() != item.yo || item.getZ() != item.zo;
+        Section section = find(item);
+        if (section == null || (!moved && section.generation == seen)) {
+            return section == null ? seen : section.generation;
+        }
+        offer(section, item);
+        return section.generation;
+    }
+
+    private static void onItemMoved(ItemEntity item) {
+        Section section = find(item);
+        if (section != null) {
+            offer(section, item);
+        }
+    }
+
+    @Nullable
+    private static Section find(ItemEntity item) {
+        Long2ObjectMap<Section> sections = levels.get(item.level());
+        return sections == null ? null : sections.get(SectionPos.asLong(item.blockPosition()));
+    }
+
+    private static void offer(Section section, ItemEntity item) {
+        for (int i = 0; i < section.automatons.size(); i++) {
+            AutomatonEntity automaton = section.automatons.get(i);
+            if (automaton.isAlive() && getPickupBox(automaton).contains(item.position())) {
+                automaton.offerPickup(item);
+            }
+        }
+    }
+}
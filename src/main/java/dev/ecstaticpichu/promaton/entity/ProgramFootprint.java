@@ -0,0 +1,149 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.entity.task.ChopTask;
+import dev.ecstaticpichu.promaton.entity.task.ContainerAccess;
+import dev.ecstaticpichu.promaton.entity.task.FeedTask;
+import dev.ecstaticpichu.promaton.entity.task.HarvestTask;
+import dev.ecstaticpichu.promaton.entity.task.MineTask;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.Arrays;
+
+/**
+ * The chunks a program can reach from its home: every waypoint and route point, the straight
+ * legs walked between them with a chunk either side for detours, and the search area of each
+ * action around where it runs.
+ *
+ * <p>Instructions are read in order, with the position after the last GOTO, PATROL or RETRIEVE
+ * standing in for where the next action runs. Jumps are not followed; a loop back to the top
+ * walks from wherever it ended to a waypoint that is already covered.
+ */
+public final class ProgramFootprint {
+
+    // Chunks either side of a leg, for the way around whatever stands in the straight line
+    private static final int LEG_PADDING = 1;
+
+    private final WaypointTable waypoints;
+    private final long[] chunks;
+
+    ProgramFootprint(CompiledProgram program, WaypointTable waypoints, long home) {
+        this.waypoints = waypoints;
+        LongOpenHashSet chunks = new LongOpenHashSet();
+        long[] at = {home};
+        addArea(chunks, home, 0);
+
+        for (int pc = 0; pc < program.getInstructionCount(); pc++) {
+            int a = program.getOperand(pc, 0);
+            int b = program.getOperand(pc, 1);
+            switch (program.getOpcode(pc)) {
+                case GOTO -> at = walk(chunks, at, a == CompiledProgram.CURSOR ? waypoints.getRoute(b) : new long[]{waypoints.get(a)});
+                case PATROL -> at = walk(chunks, at, waypoints.getRoute(a));
+                case RETRIEVE -> {
+                    if (b != CompiledProgram.NONE) {
+                        at = walk(chunks, at, new long[]{waypoints.get(b)});
+                    }
+                    addAreas(chunks, at, ContainerAccess.SEARCH_RADIUS);
+                }
+                case HARVEST -> addAreas(chunks, at, HarvestTask.RADIUS);
+                case MINE -> addAreas(chunks, at, MineTask.RADIUS);
+                case CHOP -> addAreas(chunks, at, ChopTask.RADIUS);
+                case FEED -> addAreas(chunks, at, (int) Math.ceil(FeedTask.SEARCH_RADIUS));
+                case STORE, STORE_ALL -> addAreas(chunks, at, ContainerAccess.SEARCH_RADIUS);
+                default -> {
+                }
+            }
+        }
+        this.chunks = chunks.toLongArray();
+        Arrays.sort(this.chunks);
+    }
+
+    public boolean isFor(WaypointTable waypoints) {
+        return this.waypoints == waypoints;
+    }
+
+    /**
+     * {@link ChunkPos#toLong Packed} chunk positions, sorted. Shared; do not modify.
+     */
+    public long[] getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Walks from the last of {@code from} through each of {@code points} in turn.
+     *
+     * @return the positions the walk may have stopped at, which is any of the points
+     */
+    private static long[] walk(LongOpenHashSet chunks, long[] from, long[] points) {
+        if (points.length == 0) {
+            return from;
+        }
+        long previous = from[from.length - 1];
+        for (long point : points) {
+            addLeg(chunks, previous, point);
+            previous = point;
+        }
+        return points;
+    }
+
+    /**
+     * Adds every chunk the straight line between the block centres of {@code from} and {@code to}
+     * passes through, walking the chunk grid one crossed border at a time, and the chunks around
+     * each.
+     */
+    private static void addLeg(LongOpenHashSet chunks, long from, long to) {
+        double x = BlockPos.getX(from) + 0.5;
+        double z = BlockPos.getZ(from) + 0.5;
+        double dx = BlockPos.getX(to) + 0.5 - x;
+        double dz = BlockPos.getZ(to) + 0.5 - z;
+        int chunkX = BlockPos.getX(from) >> 4;
+        int chunkZ = BlockPos.getZ(from) >> 4;
+        int endX = BlockPos.getX(to) >> 4;
+        int endZ = BlockPos.getZ(to) >> 4;
+        int stepX = Integer.signum(endX - chunkX);
+        int stepZ = Integer.signum(endZ - chunkZ);
+        // Fraction of the leg walked when the next border on each axis is crossed, and between borders
+        double nextX = stepX == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? (chunkX + 1) * 16 : chunkX * 16) - x) / dx;
+        double nextZ = stepZ == 0 ? Double.POSITIVE_INFINITY : ((stepZ > 0 ? (chunkZ + 1) * 16 : chunkZ * 16) - z) / dz;
+        double deltaX = stepX == 0 ? 0 : 16 / Math.abs(dx);
+        double deltaZ = stepZ == 0 ? 0 : 16 / Math.abs(dz);
+        addPadded(chunks, chunkX, chunkZ);
+        // Each crossing moves one axis a chunk closer to the end, so this many reach it exactly
+        for (int crossings = Math.abs(endX - chunkX) + Math.abs(endZ - chunkZ); crossings > 0; crossings--) {
+            if (chunkZ == endZ || (chunkX != endX && nextX <= nextZ)) {
+                chunkX += stepX;
+                nextX += deltaX;
+            } else {
+                chunkZ += stepZ;
+                nextZ += deltaZ;
+            }
+            addPadded(chunks, chunkX, chunkZ);
+        }
+    }
+
+    private static void addPadded(LongOpenHashSet chunks, int chunkX, int chunkZ) {
+        for (int x = chunkX - LEG_PADDING; x <= chunkX + LEG_PADDING; x++) {
+            for (int z = chunkZ - LEG_PADDING; z <= chunkZ + LEG_PADDING; z++) {
+                chunks.add(ChunkPos.asLong(x, z));
+            }
+        }
+    }
+
+    private static void addAreas(LongOpenHashSet chunks, long[] at, int radius) {
+        for (long pos : at) {
+            addArea(chunks, pos, radius);
+        }
+    }
+
+    private static void addArea(LongOpenHashSet chunks, long pos, int radius) {
+        int x = BlockPos.getX(pos);
+        int z = BlockPos.getZ(pos);
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                chunks.add(ChunkPos.asLong(chunkX, chunkZ));
+            }
+        }
+    }
+}
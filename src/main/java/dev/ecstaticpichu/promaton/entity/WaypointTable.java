@@ -0,0 +1,60 @@
+package dev.ecstaticpichu.promaton.entity;
+
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import net.minecraft.core.BlockPos;
+
+/**
+ * A program's waypoints and routes resolved against one home (the Automaton Table) position, as
+ * {@link BlockPos#asLong packed} positions indexed by the compiler's waypoint and route indices.
+ * Built once per program and home, so looking up a waypoint never allocates.
+ */
+public final class WaypointTable {
+
+    private final CompiledProgram program;
+    private final long home;
+    private final long[] waypoints;
+    private final long[][] routes;
+
+    public WaypointTable(CompiledProgram program, long home) {
+        this.program = program;
+        this.home = home;
+        int homeX = BlockPos.getX(home);
+        int homeY = BlockPos.getY(home);
+        int homeZ = BlockPos.getZ(home);
+
+        this.waypoints = new long[program.getWaypointCount()];
+        for (int i = 0; i < this.waypoints.length; i++) {
+            int x = program.getWaypointCoord(i, 0) + (program.isWaypointRelative(i, 0) ? homeX : 0);
+            int y = program.getWaypointCoord(i, 1) + (program.isWaypointRelative(i, 1) ? homeY : 0);
+            int z = program.getWaypointCoord(i, 2) + (program.isWaypointRelative(i, 2) ? homeZ : 0);
+            this.waypoints[i] = BlockPos.asLong(x, y, z);
+        }
+
+        this.routes = new long[program.getRouteCount()][];
+        for (int i = 0; i < this.routes.length; i++) {
+            int[] route = program.getRoute(i);
+            this.routes[i] = new long[route.length];
+            for (int j = 0; j < route.length; j++) {
+                this.routes[i][j] = this.get(route[j]);
+            }
+        }
+    }
+
+    public boolean isFor(CompiledProgram program, long home) {
+        return this.program == program && this.home == home;
+    }
+
+    /**
+     * Packed position of a waypoint index, including {@link CompiledProgram#HOME}.
+     */
+    public long get(int waypoint) {
+        return waypoint == CompiledProgram.HOME ? this.home : this.waypoints[waypoint];
+    }
+
+    /**
+     * Packed positions of a route's points, in order. Shared; do not modify.
+     */
+    public long[] getRoute(int route) {
+        return this.routes[route];
+    }
+}
@@ -0,0 +1,19 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+
+/**
+ * A long-running action started by a program instruction. Ticked on every automaton step until it
+ * stops returning {@link TaskStatus#RUNNING}, or stopped early when its {@code until:} time passes.
+ */
+public interface AutomatonTask {
+
+    /**
+     * @param elapsed game ticks since the previous call: 1 at full rate, more for automatons that
+     * step less often because no player is near
+     */
+    TaskStatus tick(int elapsed);
+
+    default void stop() {
+    }
+}
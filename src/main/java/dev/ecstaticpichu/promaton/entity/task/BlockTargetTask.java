@@ -0,0 +1,142 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Shared loop for HARVEST, MINE and CHOP: find the nearest matching block around the spot the
+ * command started at, walk to it, work it, repeat. Without an {@code until:} time the task ends
+ * once no targets are left; with one it keeps checking until the deadline stops it. Candidates
+ * come from the {@link BlockIndex}, so only blocks of the right kind are ever looked at.
+ */
+public abstract class BlockTargetTask implements AutomatonTask {
+
+    private static final int RESCAN_INTERVAL = 40;
+
+    protected final AutomatonEntity automaton;
+    protected final BlockPos origin;
+    protected final BlockIndex.Filter filter;
+    private final int horizontalRadius;
+    private final int verticalRadius;
+    private final double reach;
+    private final boolean untilDeadline;
+    private final Set<BlockPos> unreachable = new HashSet<>();
+    @Nullable
+    private BlockPos target = null;
+    @Nullable
+    private GotoTask approach = null;
+    private int idleTicks = 0;
+
+    /**
+     * @param filter the blocks to look through; {@link #isTarget} picks the ones to work among them
+     */
+    protected BlockTargetTask(AutomatonEntity automaton, BlockIndex.Filter filter, int horizontalRadius,
+                              int verticalRadius, double reach, boolean untilDeadline) {
+        this.automaton = automaton;
+        this.origin = automaton.blockPosition();
+        this.filter = filter;
+        this.horizontalRadius = horizontalRadius;
+        this.verticalRadius = verticalRadius;
+        this.reach = reach;
+        this.untilDeadline = untilDeadline;
+    }
+
+    protected abstract boolean isTarget(BlockState state);
+
+    /**
+     * Called every step while the automaton stands at the target.
+     *
+     * @param elapsed game ticks since the previous step
+     * @return true once the target is finished with
+     */
+    protected abstract boolean work(BlockPos pos, int elapsed);
+
+    @Override
+    public TaskStatus tick(int elapsed) {
+        if (this.target == null) {
+            if (this.idleTicks > 0) {
+                this.idleTicks -= elapsed;
+                return TaskStatus.RUNNING;
+            }
+            this.target = this.findTarget();
+            if (this.target == null) {
+                if (!this.untilDeadline) {
+                    return TaskStatus.DONE;
+                }
+                this.idleTicks = this.getRescanDelay();
+                return TaskStatus.RUNNING;
+            }
+            this.approach = new GotoTask(this.automaton, this.target, this.reach);
+        }
+
+        if (this.approach != null) {
+            TaskStatus status = this.approach.tick(elapsed);
+            if (status == TaskStatus.RUNNING) {
+                return TaskStatus.RUNNING;
+            }
+            this.approach = null;
+            if (status == TaskStatus.FAILED) {
+                this.unreachable.add(this.target);
+                this.target = null;
+                return TaskStatus.RUNNING;
+            }
+        }
+
+        if (!this.isTarget(this.automaton.level().getBlockState(this.target)) || this.work(this.target, elapsed)) {
+            this.target = null;
+        }
+        return TaskStatus.RUNNING;
+    }
+
+    @Nullable
+    protected BlockPos findTarget() {
+        Level level = this.automaton.level();
+        LongList candidates = this.getCandidates(level,
+                this.origin.offset(-this.horizontalRadius, -this.verticalRadius, -this.horizontalRadius),
+                this.origin.offset(this.horizontalRadius, this.verticalRadius, this.horizontalRadius));
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        BlockPos best = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            pos.set(candidates.getLong(i));
+            double distance = pos.distToCenterSqr(this.automaton.position());
+            if (distance >= bestDistance || !this.isTarget(level.getBlockState(pos)) || this.unreachable.contains(pos)) {
+                continue;
+            }
+            bestDistance = distance;
+            best = pos.immutable();
+        }
+        return best;
+    }
+
+    /**
+     * Positions worth checking with {@link #isTarget}, between {@code min} and {@code max}.
+     */
+    protected LongList getCandidates(Level level, BlockPos min, BlockPos max) {
+        return BlockIndex.find(level, this.filter, min, max);
+    }
+
+    /**
+     * Ticks to wait before looking again once no target is left, with an {@code until:} time.
+     */
+    protected int getRescanDelay() {
+        return RESCAN_INTERVAL;
+    }
+
+    @Override
+    public void stop() {
+        if (this.approach != null) {
+            this.approach.stop();
+        }
+        this.automaton.stopMoving();
+    }
+}
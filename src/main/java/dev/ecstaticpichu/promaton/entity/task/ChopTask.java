@@ -0,0 +1,74 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import net.minecraft.core.BlockPos;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+public class ChopTask extends BlockTargetTask {
+
+    public static final int RADIUS = 10;
+    private static final int VERTICAL_RADIUS = 3;
+    private static final double REACH = 2.5;
+    private static final int TICKS_PER_LOG = 4;
+
+    private final TreeFill tree;
+    // Logs of the current tree not felled yet; taken from the end, so the trunk base goes last
+    private int remaining = 0;
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+    @Nullable
+    private BlockPos treeBase = null;
+    private int cooldown = 0;
+
+    /**
+     * @param log the log block to fell, or null for any block in {@code minecraft:logs}
+     * @param tree the automaton's search buffers, free for this task while it runs
+     */
+    public ChopTask(AutomatonEntity automaton, @Nullable Block log, TreeFill tree, boolean untilDeadline) {
+        super(automaton, log != null ? BlockIndex.Filter.of(log) : BlockIndex.Filter.of(BlockTags.LOGS),
+                RADIUS, VERTICAL_RADIUS, REACH, untilDeadline);
+        this.tree = tree;
+    }
+
+    @Override
+    protected boolean isTarget(BlockState state) {
+        return this.filter.matches(state);
+    }
+
+    @Override
+    protected boolean work(BlockPos pos, int elapsed) {
+        Level level = this.automaton.level();
+        if (!pos.equals(this.treeBase)) {
+            this.treeBase = pos;
+            this.remaining = this.tree.collect(level, pos, this.filter);
+        }
+        if (this.cooldown > 0) {
+            this.cooldown -= elapsed;
+            return false;
+        }
+        while (this.remaining > 0) {
+            long next = this.tree.getLog(--this.remaining);
+            if (this.isTarget(level.getBlockState(this.cursor.set(next)))) {
+                this.automaton.breakBlock(BlockPos.of(next));
+                this.cooldown = TICKS_PER_LOG;
+                break;
+            }
+        }
+        if (this.remaining == 0) {
+            this.treeBase = null;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        this.remaining = 0;
+        this.treeBase = null;
+    }
+}
@@ -0,0 +1,55 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.Container;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public final class ContainerAccess {
+
+    public static final int SEARCH_RADIUS = 4;
+
+    private ContainerAccess() {
+    }
+
+    /**
+     * Every container block entity within {@link #SEARCH_RADIUS} of {@code center}, nearest first.
+     * Read off the block entity lists of the chunks around it; chunks that are not loaded are left
+     * out.
+     */
+    public static List<Container> findContainers(Level level, BlockPos center) {
+        List<BlockEntity> found = new ArrayList<>();
+        for (int chunkX = SectionPos.blockToSectionCoord(center.getX() - SEARCH_RADIUS);
+             chunkX <= SectionPos.blockToSectionCoord(center.getX() + SEARCH_RADIUS); chunkX++) {
+            for (int chunkZ = SectionPos.blockToSectionCoord(center.getZ() - SEARCH_RADIUS);
+                 chunkZ <= SectionPos.blockToSectionCoord(center.getZ() + SEARCH_RADIUS); chunkZ++) {
+                LevelChunk chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+                    BlockPos pos = blockEntity.getBlockPos();
+                    if (blockEntity instanceof Container && !blockEntity.isRemoved()
+                            && Math.abs(pos.getX() - center.getX()) <= SEARCH_RADIUS
+                            && Math.abs(pos.getY() - center.getY()) <= SEARCH_RADIUS
+                            && Math.abs(pos.getZ() - center.getZ()) <= SEARCH_RADIUS) {
+                        found.add(blockEntity);
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingInt((BlockEntity blockEntity) -> blockEntity.getBlockPos().distManhattan(center))
+                .thenComparingLong(blockEntity -> blockEntity.getBlockPos().asLong()));
+        List<Container> containers = new ArrayList<>(found.size());
+        for (BlockEntity blockEntity : found) {
+            containers.add((Container) blockEntity);
+        }
+        return containers;
+    }
+}
@@ -0,0 +1,91 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.world.Container;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Predicate;
+
+/**
+ * What a container holds, summed up per item, and how much more it can take: enough for STORE and
+ * RETRIEVE to pass over containers they have no business with without reading their slots.
+ *
+ * <p>Kept on the container's block entity and dropped whenever the block entity is marked changed,
+ * which every change to a container's slots is followed by; it is counted again on next use.
+ */
+public final class ContainerContents {
+
+    /**
+     * Mixed into every block entity.
+     */
+    public interface Holder {
+
+        @Nullable
+        ContainerContents promaton$getContents();
+
+        void promaton$setContents(@Nullable ContainerContents contents);
+    }
+
+    private final Reference2IntOpenHashMap<Item> counts = new Reference2IntOpenHashMap<>();
+    // Items that fit on top of partial stacks already there
+    private final Reference2IntOpenHashMap<Item> room = new Reference2IntOpenHashMap<>();
+    private int emptySlots = 0;
+
+    private ContainerContents(Container container) {
+        for (int slot = 0; slot < container.getContainerSize(); slot++) {
+            ItemStack stack = container.getItem(slot);
+            if (stack.isEmpty()) {
+                this.emptySlots++;
+                continue;
+            }
+            this.counts.addTo(stack.getItem(), stack.getCount());
+            int space = Math.min(container.getMaxStackSize(stack), stack.getMaxStackSize()) - stack.getCount();
+            if (space > 0) {
+                this.room.addTo(stack.getItem(), space);
+            }
+        }
+    }
+
+    /**
+     * The contents of {@code container}, from the block entity's copy while nothing has changed.
+     */
+    public static ContainerContents of(Container container) {
+        if (!(container instanceof Holder holder)) {
+            return new ContainerContents(container);
+        }
+        ContainerContents contents = holder.promaton$getContents();
+        if (contents == null) {
+            contents = new ContainerContents(container);
+            holder.promaton$setContents(contents);
+        }
+        return contents;
+    }
+
+    public int count(Item item) {
+        return this.counts.getInt(item);
+    }
+
+    public boolean holdsAny(Predicate<Item> filter) {
+        for (Reference2IntMap.Entry<Item> entry : this.counts.reference2IntEntrySet()) {
+            if (filter.test(entry.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether some of {@code item} would fit, on a partial stack or in an empty slot. Slots that
+     * refuse the item are not known about, so this can be wrong the hopeful way.
+     */
+    public boolean canTake(Item item) {
+        return this.emptySlots > 0 || this.room.getInt(item) > 0;
+    }
+
+    public boolean hasRoomOnStacks(Item item) {
+        return this.room.getInt(item) > 0;
+    }
+}
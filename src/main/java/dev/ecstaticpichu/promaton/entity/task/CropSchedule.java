@@ -0,0 +1,156 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.CropBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.gamerules.GameRules;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * When each crop of one HARVEST work area is expected to be ripe, so a harvester only looks at a
+ * crop again once it could have grown, and can stand still until the first one is due.
+ *
+ * <p>Estimates assume the fastest growth a crop can get (hydrated farmland, neighbours of the right
+ * kind) at the level's random tick speed; a crop that turns out to still be growing when it is due
+ * is simply given a new estimate from the stage it has reached. The work area is surveyed through
+ * the {@link BlockIndex} on the first look, whenever the area shifts, and every
+ * {@link #SURVEY_INTERVAL} ticks after, to pick up crops planted by someone else.
+ *
+ * <p>Kept by the automaton across HARVEST tasks, so a harvester that leaves to store its crops and
+ * comes back does not look over its whole field again.
+ */
+public final class CropSchedule {
+
+    private static final int SURVEY_INTERVAL = 600;
+    // How far the automaton may stand from where the schedule was made and still be at the same field
+    private static final int SAME_AREA_DISTANCE = 2;
+    // One random tick in every 4096 blocks of a section per point of randomTickSpeed, and the
+    // growth roll of a crop on hydrated farmland in a row of its own kind
+    private static final double RANDOM_TICKS_PER_BLOCK = 1.0 / 4096.0;
+    private static final double GROWTH_CHANCE = 1.0 / 3.0;
+
+    private record Visit(long due, long pos) {
+    }
+
+    private final CropBlock crop;
+    private final BlockPos origin;
+    private final PriorityQueue<Visit> growing = new PriorityQueue<>(Comparator.comparingLong(Visit::due));
+    private final LongOpenHashSet ripe = new LongOpenHashSet();
+    // Every crop in one of the two above
+    private final LongOpenHashSet known = new LongOpenHashSet();
+    private long nextSurvey = Long.MIN_VALUE;
+    // Lower corner of the area last surveyed
+    private long surveyed = Long.MIN_VALUE;
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+    public CropSchedule(CropBlock crop, BlockPos origin) {
+        this.crop = crop;
+        this.origin = origin.immutable();
+    }
+
+    /**
+     * Whether this schedule is for {@code crop} around {@code origin}, give or take a step or two.
+     */
+    public boolean covers(Block crop, BlockPos origin) {
+        return crop == this.crop
+                && Math.abs(origin.getX() - this.origin.getX()) <= SAME_AREA_DISTANCE
+                && Math.abs(origin.getY() - this.origin.getY()) <= SAME_AREA_DISTANCE
+                && Math.abs(origin.getZ() - this.origin.getZ()) <= SAME_AREA_DISTANCE;
+    }
+
+    /**
+     * Brings the schedule up to date and returns the crops between {@code min} and {@code max}
+     * that are ripe now.
+     */
+    LongList getRipe(Level level, BlockPos min, BlockPos max) {
+        long now = level.getGameTime();
+        if (now >= this.nextSurvey || min.asLong() != this.surveyed) {
+            this.nextSurvey = now + SURVEY_INTERVAL;
+            this.surveyed = min.asLong();
+            LongList crops = BlockIndex.find(level, BlockIndex.Filter.of(this.crop), min, max);
+            for (int i = 0; i < crops.size(); i++) {
+                long pos = crops.getLong(i);
+                if (this.known.add(pos)) {
+                    this.check(level, pos, now);
+                }
+            }
+        }
+        while (!this.growing.isEmpty() && this.growing.peek().due() <= now) {
+            this.check(level, this.growing.poll().pos(), now);
+        }
+
+        LongArrayList found = new LongArrayList(this.ripe.size());
+        for (LongIterator it = this.ripe.iterator(); it.hasNext(); ) {
+            long pos = it.nextLong();
+            BlockState state = level.getBlockState(this.cursor.set(pos));
+            if (state.is(this.crop) && this.crop.isMaxAge(state)) {
+                if (contains(min, max, pos)) {
+                    found.add(pos);
+                }
+                continue;
+            }
+            // Harvested or trampled by someone else since
+            it.remove();
+            this.check(level, pos, now);
+        }
+        return found;
+    }
+
+    /**
+     * Ticks until the next crop is due or the next survey, whichever is first.
+     */
+    int getTicksUntilDue(Level level) {
+        long due = this.nextSurvey;
+        if (!this.growing.isEmpty()) {
+            due = Math.min(due, this.growing.peek().due());
+        }
+        return (int) Math.max(1, due - level.getGameTime());
+    }
+
+    /**
+     * Called once the crop at {@code pos} is harvested and, if there was a seed for it, replanted.
+     */
+    void onHarvested(Level level, BlockPos pos) {
+        long packed = pos.asLong();
+        this.ripe.remove(packed);
+        this.check(level, packed, level.getGameTime());
+    }
+
+    private void check(Level level, long pos, long now) {
+        BlockState state = level.getBlockState(this.cursor.set(pos));
+        if (!state.is(this.crop)) {
+            this.known.remove(pos);
+        } else if (this.crop.isMaxAge(state)) {
+            this.ripe.add(pos);
+        } else {
+            this.growing.add(new Visit(now + this.estimateGrowth(level, state), pos));
+        }
+    }
+
+    private static boolean contains(BlockPos min, BlockPos max, long pos) {
+        int x = BlockPos.getX(pos);
+        int y = BlockPos.getY(pos);
+        int z = BlockPos.getZ(pos);
+        return x >= min.getX() && x <= max.getX() && y >= min.getY() && y <= max.getY() && z >= min.getZ() && z <= max.getZ();
+    }
+
+    private long estimateGrowth(Level level, BlockState state) {
+        int speed = level instanceof ServerLevel serverLevel ? serverLevel.getGameRules().get(GameRules.RANDOM_TICK_SPEED) : 0;
+        if (speed <= 0) {
+            // Nothing grows; look again with the next survey in case the rule changes
+            return SURVEY_INTERVAL;
+        }
+        int stages = this.crop.getMaxAge() - this.crop.getAge(state);
+        return (long) Math.ceil(stages / (speed * RANDOM_TICKS_PER_BLOCK * GROWTH_CHANCE));
+    }
+}
@@ -0,0 +1,99 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import net.minecraft.world.entity.animal.Animal;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * FEED: walks up to nearby adult animals that accept the food and puts them in love mode.
+ */
+public class FeedTask implements AutomatonTask {
+
+    public static final double SEARCH_RADIUS = 8.0;
+    private static final double REACH = 2.0;
+    private static final int RESCAN_INTERVAL = 40;
+
+    private final AutomatonEntity automaton;
+    private final Item food;
+    private final boolean untilDeadline;
+    @Nullable
+    private Animal target = null;
+    private int idleTicks = 0;
+    private int stuckTicks = 0;
+
+    public FeedTask(AutomatonEntity automaton, Item food, boolean untilDeadline) {
+        this.automaton = automaton;
+        this.food = food;
+        this.untilDeadline = untilDeadline;
+    }
+
+    @Override
+    public TaskStatus tick(int elapsed) {
+        if (this.automaton.countItem(this.food) == 0) {
+            return TaskStatus.DONE;
+        }
+        if (this.target == null || !this.canFeed(this.target)) {
+            if (this.idleTicks > 0) {
+                this.idleTicks -= elapsed;
+                return TaskStatus.RUNNING;
+            }
+            this.target = this.findAnimal();
+            this.stuckTicks = 0;
+            if (this.target == null) {
+                if (!this.untilDeadline) {
+                    return TaskStatus.DONE;
+                }
+                this.idleTicks = RESCAN_INTERVAL;
+                return TaskStatus.RUNNING;
+            }
+        }
+
+        if (this.automaton.distanceToSqr(this.target) > REACH * REACH) {
+            if ((this.stuckTicks += elapsed) > 200) {
+                this.target = null;
+                this.automaton.stopMoving();
+                return TaskStatus.RUNNING;
+            }
+            this.automaton.moveTowards(this.target.getX(), this.target.getY(), this.target.getZ());
+            return TaskStatus.RUNNING;
+        }
+
+        this.automaton.stopMoving();
+        if (this.automaton.consumeItem(this.food)) {
+            this.target.setInLove(null);
+        }
+        this.target = null;
+        return TaskStatus.RUNNING;
+    }
+
+    private boolean canFeed(Animal animal) {
+        return animal.isAlive() && animal.getAge() == 0 && animal.canFallInLove()
+                && animal.isFood(new ItemStack(this.food));
+    }
+
+    @Nullable
+    private Animal findAnimal() {
+        List<Animal> animals = this.automaton.level().getEntitiesOfClass(Animal.class,
+                this.automaton.getBoundingBox().inflate(SEARCH_RADIUS), this::canFeed);
+        Animal nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (Animal animal : animals) {
+            double distance = this.automaton.distanceToSqr(animal);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = animal;
+            }
+        }
+        return nearest;
+    }
+
+    @Override
+    public void stop() {
+        this.automaton.stopMoving();
+    }
+}
@@ -0,0 +1,144 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.path.RegionGraph;
+import dev.ecstaticpichu.promaton.path.RegionPath;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Walks to a position. Short legs are steered straight at; longer ones follow a {@link RegionPath}
+ * until the automaton is in the target's region and next to it. Paths are searched in the
+ * background, steering straight at the target meanwhile.
+ */
+public class GotoTask implements AutomatonTask {
+
+    private static final int STUCK_TICKS = 100;
+    // Beyond this, straight steering is likely to end at a wall
+    private static final double PATH_RANGE = 16.0;
+    private static final int REPATH_TICKS = 40;
+
+    private final AutomatonEntity automaton;
+    private final int targetX;
+    private final int targetY;
+    private final int targetZ;
+    private final double reachSqr;
+    private double bestDistanceSqr = Double.MAX_VALUE;
+    private int ticksWithoutProgress = 0;
+    @Nullable
+    private RegionPath path = null;
+    @Nullable
+    private CompletableFuture<RegionPath> pendingPath = null;
+    private int pathProgress = 0;
+    private int repathCooldown = 0;
+
+    public GotoTask(AutomatonEntity automaton, BlockPos target, double reach) {
+        this(automaton, target.asLong(), reach);
+    }
+
+    /**
+     * @param target a {@link BlockPos#asLong packed} position
+     */
+    public GotoTask(AutomatonEntity automaton, long target, double reach) {
+        this.automaton = automaton;
+        this.targetX = BlockPos.getX(target);
+        this.targetY = BlockPos.getY(target);
+        this.targetZ = BlockPos.getZ(target);
+        this.reachSqr = reach * reach;
+    }
+
+    @Override
+    public TaskStatus tick(int elapsed) {
+        double dx = this.targetX + 0.5 - this.automaton.getX();
+        double dy = this.targetY - this.automaton.getY();
+        double dz = this.targetZ + 0.5 - this.automaton.getZ();
+        double distanceSqr = dx * dx + dz * dz;
+        if (distanceSqr <= this.reachSqr && Math.abs(dy) < 3.0) {
+            this.automaton.stopMoving();
+            return TaskStatus.DONE;
+        }
+
+        if (distanceSqr < this.bestDistanceSqr - 0.01) {
+            this.bestDistanceSqr = distanceSqr;
+            this.ticksWithoutProgress = 0;
+        } else if (this.path != null && this.path.getProgress() != this.pathProgress) {
+            // Detours on a path may lead away from the target for a while
+            this.pathProgress = this.path.getProgress();
+            this.ticksWithoutProgress = 0;
+        } else if ((this.ticksWithoutProgress += elapsed) > STUCK_TICKS) {
+            this.automaton.stopMoving();
+            return TaskStatus.FAILED;
+        }
+
+        if (this.followPath(distanceSqr, elapsed)) {
+            long next = this.path.getTarget();
+            this.automaton.moveTowards(BlockPos.getX(next) + 0.5, BlockPos.getY(next), BlockPos.getZ(next) + 0.5);
+        } else {
+            this.automaton.moveTowards(this.targetX + 0.5, this.targetY, this.targetZ + 0.5);
+        }
+        return TaskStatus.RUNNING;
+    }
+
+    /**
+     * @return whether to steer along {@link #path} rather than straight at the target
+     */
+    private boolean followPath(double distanceSqr, int elapsed) {
+        if (this.path == null) {
+            if (this.pendingPath != null) {
+                if (!this.pendingPath.isDone()) {
+                    return false;
+                }
+                RegionPath found = this.pendingPath.join();
+                this.pendingPath = null;
+                if (found == null) {
+                    this.repathCooldown = REPATH_TICKS;
+                    return false;
+                }
+                if (!found.isCurrent()) {
+                    // Blocks changed along the way while it was being searched; search again
+                    return false;
+                }
+                this.path = found;
+                this.pathProgress = 0;
+            } else {
+                this.repathCooldown -= elapsed;
+                if (distanceSqr >= PATH_RANGE * PATH_RANGE && this.repathCooldown <= 0
+                        && this.automaton.level() instanceof ServerLevel level) {
+                    this.pendingPath = RegionGraph.get(level).findPath(
+                            this.automaton.blockPosition(), BlockPos.asLong(this.targetX, this.targetY, this.targetZ));
+                }
+                return false;
+            }
+        }
+        switch (this.path.advance(this.automaton.blockPosition())) {
+            case MOVING -> {
+                return true;
+            }
+            case ARRIVED -> {
+                // A partial path ends where the search gave up; look further from there
+                if (this.path.isComplete()) {
+                    this.repathCooldown = Integer.MAX_VALUE;
+                }
+                this.path = null;
+                return false;
+            }
+            default -> {
+                this.path = null;
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.automaton.stopMoving();
+        if (this.pendingPath != null) {
+            this.pendingPath.cancel(false);
+            this.pendingPath = null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.CropBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * HARVEST: breaks ripe crops around the automaton and replants them from its inventory. Crops that
+ * grow in stages are tracked by a {@link CropSchedule}, so unripe ones are only looked at again
+ * once they could have grown, and an automaton with nothing ripe waits for the first one due. The
+ * schedule belongs to the automaton and outlives the task.
+ */
+public class HarvestTask extends BlockTargetTask {
+
+    public static final int RADIUS = 8;
+    private static final int VERTICAL_RADIUS = 2;
+    private static final double REACH = 1.5;
+
+    private final Block crop;
+    @Nullable
+    private final CropSchedule schedule;
+
+    /**
+     * @param schedule the automaton's schedule for {@code crop} around where it stands, or null for
+     *                 crops that do not grow in stages
+     */
+    public HarvestTask(AutomatonEntity automaton, Block crop, @Nullable CropSchedule schedule, boolean untilDeadline) {
+        super(automaton, BlockIndex.Filter.of(crop), RADIUS, VERTICAL_RADIUS, REACH, untilDeadline);
+        this.crop = crop;
+        this.schedule = schedule;
+    }
+
+    @Override
+    protected boolean isTarget(BlockState state) {
+        if (!state.is(this.crop)) {
+            return false;
+        }
+        return !(state.getBlock() instanceof CropBlock cropBlock) || cropBlock.isMaxAge(state);
+    }
+
+    @Override
+    protected boolean work(BlockPos pos, int elapsed) {
+        this.automaton.breakBlock(pos);
+        this.replant(pos);
+        if (this.schedule != null) {
+            this.schedule.onHarvested(this.automaton.level(), pos);
+        }
+        return true;
+    }
+
+    @Override
+    protected LongList getCandidates(Level level, BlockPos min, BlockPos max) {
+        return this.schedule != null ? this.schedule.getRipe(level, min, max) : super.getCandidates(level, min, max);
+    }
+
+    @Override
+    protected int getRescanDelay() {
+        return this.schedule != null ? this.schedule.getTicksUntilDue(this.automaton.level()) : super.getRescanDelay();
+    }
+
+    private void replant(BlockPos pos) {
+        if (!(this.crop instanceof CropBlock)) {
+            return;
+        }
+        Level level = this.automaton.level();
+        BlockState seedling = this.crop.defaultBlockState();
+        if (level.getBlockState(pos).isAir() && seedling.canSurvive(level, pos)
+                && this.automaton.consumeItem(this.crop.asItem())) {
+            level.setBlock(pos, seedling, Block.UPDATE_ALL);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+public class MineTask extends BlockTargetTask {
+
+    public static final int RADIUS = 8;
+    private static final int VERTICAL_RADIUS = 8;
+    private static final double REACH = 3.0;
+    private static final int TICKS_PER_HARDNESS = 15;
+
+    private final Block block;
+    private int progress = 0;
+
+    public MineTask(AutomatonEntity automaton, Block block, boolean untilDeadline) {
+        super(automaton, BlockIndex.Filter.of(block), RADIUS, VERTICAL_RADIUS, REACH, untilDeadline);
+        this.block = block;
+    }
+
+    @Override
+    protected boolean isTarget(BlockState state) {
+        return state.is(this.block);
+    }
+
+    @Override
+    protected boolean work(BlockPos pos, int elapsed) {
+        BlockState state = this.automaton.level().getBlockState(pos);
+        int needed = Math.max(4, (int) (state.getDestroySpeed(this.automaton.level(), pos) * TICKS_PER_HARDNESS));
+        this.progress += elapsed;
+        if (this.progress < needed) {
+            this.automaton.level().destroyBlockProgress(this.automaton.getId(), pos, this.progress * 10 / needed);
+            return false;
+        }
+        this.automaton.level().destroyBlockProgress(this.automaton.getId(), pos, -1);
+        this.automaton.breakBlock(pos);
+        this.progress = 0;
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        this.progress = 0;
+    }
+}
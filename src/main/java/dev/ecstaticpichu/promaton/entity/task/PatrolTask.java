@@ -0,0 +1,48 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import net.minecraft.core.BlockPos;
+
+public class PatrolTask implements AutomatonTask {
+
+    private static final double REACH = 1.5;
+
+    private final AutomatonEntity automaton;
+    private final long[] points;
+    private final boolean loop;
+    private int index = 0;
+    private GotoTask leg;
+
+    /**
+     * @param points {@link BlockPos#asLong packed} positions, not copied
+     * @param loop keep circling the route (until the instruction's deadline) instead of walking it once
+     */
+    public PatrolTask(AutomatonEntity automaton, long[] points, boolean loop) {
+        this.automaton = automaton;
+        this.points = points;
+        this.loop = loop;
+        this.leg = new GotoTask(automaton, points[0], REACH);
+    }
+
+    @Override
+    public TaskStatus tick(int elapsed) {
+        if (this.leg.tick(elapsed) == TaskStatus.RUNNING) {
+            return TaskStatus.RUNNING;
+        }
+        this.index++;
+        if (this.index >= this.points.length) {
+            if (!this.loop) {
+                return TaskStatus.DONE;
+            }
+            this.index = 0;
+        }
+        this.leg = new GotoTask(this.automaton, this.points[this.index], REACH);
+        return TaskStatus.RUNNING;
+    }
+
+    @Override
+    public void stop() {
+        this.leg.stop();
+    }
+}
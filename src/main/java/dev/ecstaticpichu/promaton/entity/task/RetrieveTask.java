@@ -0,0 +1,70 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.Container;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.function.Predicate;
+
+/**
+ * RETRIEVE: takes up to {@code amount} matching items out of containers around {@code source}.
+ * Containers whose {@link ContainerContents} hold nothing matching are not opened.
+ */
+public class RetrieveTask implements AutomatonTask {
+
+    private static final double MAX_SOURCE_DISTANCE = 8.0;
+
+    private final AutomatonEntity automaton;
+    private final BlockPos source;
+    private final Predicate<Item> filter;
+    private final int amount;
+
+    public RetrieveTask(AutomatonEntity automaton, BlockPos source, Predicate<Item> filter, int amount) {
+        this.automaton = automaton;
+        this.source = source;
+        this.filter = filter;
+        this.amount = amount;
+    }
+
+    @Override
+    public TaskStatus tick(int elapsed) {
+        if (this.source.distToCenterSqr(this.automaton.position()) > MAX_SOURCE_DISTANCE * MAX_SOURCE_DISTANCE) {
+            return TaskStatus.FAILED;
+        }
+        int wanted = this.amount;
+        for (Container container : ContainerAccess.findContainers(this.automaton.level(), this.source)) {
+            if (!ContainerContents.of(container).holdsAny(this.filter)) {
+                continue;
+            }
+            boolean changed = false;
+            for (int slot = 0; slot < container.getContainerSize() && wanted > 0; slot++) {
+                ItemStack stack = container.getItem(slot);
+                if (stack.isEmpty() || !this.filter.test(stack.getItem())) {
+                    continue;
+                }
+                ItemStack taken = stack.copyWithCount(Math.min(wanted, stack.getCount()));
+                int requested = taken.getCount();
+                ItemStack leftover = this.automaton.addToInventory(taken);
+                int moved = requested - leftover.getCount();
+                if (moved > 0) {
+                    stack.shrink(moved);
+                    wanted -= moved;
+                    changed = true;
+                }
+                if (!leftover.isEmpty()) {
+                    wanted = 0;
+                }
+            }
+            if (changed) {
+                container.setChanged();
+            }
+            if (wanted <= 0) {
+                break;
+            }
+        }
+        return wanted < this.amount ? TaskStatus.DONE : TaskStatus.FAILED;
+    }
+}
@@ -0,0 +1,185 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.mixin.BaseContainerBlockEntityAccessor;
+import net.minecraft.world.Container;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.entity.BarrelBlockEntity;
+import net.minecraft.world.level.block.entity.ChestBlockEntity;
+import net.minecraft.world.level.block.entity.ShulkerBoxBlockEntity;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Emptying an automaton's inventory into containers in one go. Where every stack goes is worked
+ * out first, against copies of the containers' slots; then all the moves are made, and each
+ * container that received anything is marked changed once, so comparators and hoppers next to it
+ * react to the whole delivery once instead of to every stack in it.
+ *
+ * <p>Stacks go onto partial stacks of the same item in any container first, then into empty slots
+ * in order. Containers whose {@link ContainerContents} have no room for an item are passed over
+ * without reading their slots.
+ */
+public final class StorePlan {
+
+    /**
+     * {@code count} items from inventory slot {@code slot} into slot {@code target} of a container.
+     */
+    private record Move(int slot, int container, int target, int count) {
+    }
+
+    private final List<Container> containers;
+    // Slots of each container as they will be once the plan is carried out; copied on first use
+    private final ItemStack[][] views;
+    private final List<Move> moves = new ArrayList<>();
+
+    private StorePlan(List<Container> containers) {
+        this.containers = containers;
+        this.views = new ItemStack[containers.size()][];
+    }
+
+    /**
+     * Moves every inventory slot matching {@code filter} into {@code containers}, as much as fits.
+     */
+    public static void storeAll(AutomatonEntity automaton, List<Container> containers, Predicate<ItemStack> filter) {
+        StorePlan plan = new StorePlan(containers);
+        for (int slots = automaton.getInventoryIndex().getOccupiedSlots(); slots != 0; slots &= slots - 1) {
+            int slot = Integer.numberOfTrailingZeros(slots);
+            ItemStack stack = automaton.getItem(slot);
+            if (filter.test(stack)) {
+                plan.place(slot, stack);
+            }
+        }
+        plan.apply(automaton);
+    }
+
+    // --- Planning ---
+
+    private void place(int slot, ItemStack stack) {
+        Item item = stack.getItem();
+        int left = stack.getCount();
+        for (int i = 0; i < this.containers.size() && left > 0; i++) {
+            if (this.views[i] != null || ContainerContents.of(this.containers.get(i)).hasRoomOnStacks(item)) {
+                left = this.merge(slot, i, stack, left);
+            }
+        }
+        for (int i = 0; i < this.containers.size() && left > 0; i++) {
+            if (this.views[i] != null || ContainerContents.of(this.containers.get(i)).canTake(item)) {
+                left = this.fill(slot, i, stack, left);
+            }
+        }
+    }
+
+    private int merge(int slot, int index, ItemStack stack, int left) {
+        Container container = this.containers.get(index);
+        ItemStack[] view = this.getView(index);
+        for (int target = 0; target < view.length && left > 0; target++) {
+            ItemStack existing = view[target];
+            if (existing.isEmpty() || !ItemStack.isSameItemSameComponents(existing, stack)
+                    || !container.canPlaceItem(target, stack)) {
+                continue;
+            }
+            int moved = Math.min(left, Math.min(container.getMaxStackSize(existing), existing.getMaxStackSize()) - existing.getCount());
+            if (moved > 0) {
+                existing.grow(moved);
+                left -= moved;
+                this.moves.add(new Move(slot, index, target, moved));
+            }
+        }
+        return left;
+    }
+
+    private int fill(int slot, int index, ItemStack stack, int left) {
+        Container container = this.containers.get(index);
+        ItemStack[] view = this.getView(index);
+        for (int target = 0; target < view.length && left > 0; target++) {
+            if (!view[target].isEmpty() || !container.canPlaceItem(target, stack)) {
+                continue;
+            }
+            int moved = Math.min(left, container.getMaxStackSize(stack));
+            view[target] = stack.copyWithCount(moved);
+            left -= moved;
+            this.moves.add(new Move(slot, index, target, moved));
+        }
+        return left;
+    }
+
+    private ItemStack[] getView(int index) {
+        ItemStack[] view = this.views[index];
+        if (view == null) {
+            Container container = this.containers.get(index);
+            view = new ItemStack[container.getContainerSize()];
+            for (int target = 0; target < view.length; target++) {
+                view[target] = container.getItem(target).copy();
+            }
+            this.views[index] = view;
+        }
+        return view;
+    }
+
+    // --- Applying ---
+
+    private void apply(AutomatonEntity automaton) {
+        if (this.moves.isEmpty()) {
+            return;
+        }
+        Set<Container> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        // Moves out of one slot are planned together, so each slot is settled once its run ends
+        int slot = -1;
+        int taken = 0;
+        ItemStack source = null;
+        for (Move move : this.moves) {
+            if (move.slot() != slot) {
+                settle(automaton, slot, source, taken);
+                slot = move.slot();
+                source = automaton.getItem(slot);
+                taken = 0;
+            }
+            Container container = this.containers.get(move.container());
+            ItemStack existing = container.getItem(move.target());
+            if (existing.isEmpty()) {
+                place(container, move.target(), source.copyWithCount(move.count()));
+            } else {
+                existing.grow(move.count());
+            }
+            taken += move.count();
+            touched.add(container);
+        }
+        settle(automaton, slot, source, taken);
+        for (Container container : touched) {
+            container.setChanged();
+        }
+    }
+
+    /**
+     * Puts a stack into an empty slot. Vanilla containers mark themselves changed on every
+     * {@code setItem}, so the slots of plain storage, whose {@code setItem} does nothing else, are
+     * written directly and left for the one mark at the end. Others, such as furnaces resetting
+     * their cooking time, still go through {@code setItem}.
+     */
+    private static void place(Container container, int target, ItemStack stack) {
+        if (isPlainStorage(container) && container instanceof BaseContainerBlockEntityAccessor accessor) {
+            accessor.promaton$getItems().set(target, stack);
+        } else {
+            container.setItem(target, stack);
+        }
+    }
+
+    private static boolean isPlainStorage(Container container) {
+        return container instanceof ChestBlockEntity || container instanceof BarrelBlockEntity
+                || container instanceof ShulkerBoxBlockEntity;
+    }
+
+    private static void settle(AutomatonEntity automaton, int slot, @Nullable ItemStack source, int taken) {
+        if (source != null) {
+            automaton.setItem(slot, source.copyWithCount(source.getCount() - taken));
+        }
+    }
+}
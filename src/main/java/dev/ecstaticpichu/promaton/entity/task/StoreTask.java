@@ -0,0 +1,34 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import net.minecraft.world.Container;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * STORE and STORE_ALL: empties matching inventory slots into containers around the automaton,
+ * all in one {@link StorePlan}.
+ */
+public class StoreTask implements AutomatonTask {
+
+    private final AutomatonEntity automaton;
+    private final Predicate<ItemStack> filter;
+
+    public StoreTask(AutomatonEntity automaton, Predicate<ItemStack> filter) {
+        this.automaton = automaton;
+        this.filter = filter;
+    }
+
+    @Override
+    public TaskStatus tick(int elapsed) {
+        List<Container> containers = ContainerAccess.findContainers(this.automaton.level(), this.automaton.blockPosition());
+        if (containers.isEmpty()) {
+            return TaskStatus.FAILED;
+        }
+        StorePlan.storeAll(this.automaton, containers, this.filter);
+        return TaskStatus.DONE;
+    }
+}
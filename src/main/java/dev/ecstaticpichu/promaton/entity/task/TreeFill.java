@@ -0,0 +1,125 @@
+package dev.ecstaticpichu.promaton.entity.task;
+
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.core.BlockPos;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.LeavesBlock;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.Arrays;
+
+/**
+ * Breadth-first search for the logs of one tree, over packed positions and arrays allocated once,
+ * so felling tree after tree makes no garbage. Steps go to all 26 neighbours, which joins the
+ * trunks of 2x2 trees and reaches diagonal branches, and through up to {@link #MAX_LEAF_STEPS}
+ * natural leaves, which reaches branches only attached to the tree by its canopy.
+ *
+ * <p>The arrays come to about 75KB, so each automaton keeps one and hands it to every CHOP task.
+ */
+public final class TreeFill {
+
+    static final int MAX_LOGS = 256;
+    private static final int MAX_VISITED = 4096;
+    private static final int MAX_LEAF_STEPS = 2;
+    // Open addressing with linear probing, kept at most half full
+    private static final int VISITED_CAPACITY = 8192;
+    private static final int QUEUE_CAPACITY = 1024;
+    // Outside the world border, so never a real position
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] visited = new long[VISITED_CAPACITY];
+    private int visitedCount = 0;
+    // Ring buffer of positions to expand, with the leaves crossed to reach each
+    private final long[] queue = new long[QUEUE_CAPACITY];
+    private final byte[] queueLeafSteps = new byte[QUEUE_CAPACITY];
+    private int head = 0;
+    private int size = 0;
+    private final long[] logs = new long[MAX_LOGS];
+    private int logCount = 0;
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+    /**
+     * Finds the logs connected to {@code base}, which is taken to be one, base first. Stops at
+     * {@link #MAX_LOGS} logs or {@link #MAX_VISITED} blocks looked at.
+     *
+     * @return the number of logs found
+     */
+    int collect(Level level, BlockPos base, BlockIndex.Filter logs) {
+        Arrays.fill(this.visited, EMPTY);
+        this.visitedCount = 0;
+        this.head = 0;
+        this.size = 0;
+        this.logCount = 0;
+        long start = base.asLong();
+        this.visit(start);
+        this.offer(start, 0);
+        while (this.size > 0 && this.logCount < MAX_LOGS) {
+            long pos = this.queue[this.head];
+            int leafSteps = this.queueLeafSteps[this.head];
+            this.head = (this.head + 1) & (QUEUE_CAPACITY - 1);
+            this.size--;
+            if (leafSteps == 0) {
+                this.logs[this.logCount++] = pos;
+            }
+            int x = BlockPos.getX(pos);
+            int y = BlockPos.getY(pos);
+            int z = BlockPos.getZ(pos);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        long neighbor = BlockPos.asLong(x + dx, y + dy, z + dz);
+                        if (this.visitedCount >= MAX_VISITED || !this.visit(neighbor)) {
+                            continue;
+                        }
+                        BlockState state = level.getBlockState(this.cursor.set(x + dx, y + dy, z + dz));
+                        if (logs.matches(state)) {
+                            this.offer(neighbor, 0);
+                        } else if (leafSteps < MAX_LEAF_STEPS && state.is(BlockTags.LEAVES)
+                                && state.hasProperty(LeavesBlock.PERSISTENT) && !state.getValue(LeavesBlock.PERSISTENT)) {
+                            this.offer(neighbor, leafSteps + 1);
+                        }
+                    }
+                }
+            }
+        }
+        return this.logCount;
+    }
+
+    /**
+     * The {@code index}th log found by the last {@link #collect}.
+     */
+    long getLog(int index) {
+        return this.logs[index];
+    }
+
+    /**
+     * Adds a position to the visited set.
+     *
+     * @return false if it was already there
+     */
+    private boolean visit(long pos) {
+        int slot = (int) HashCommon.mix(pos) & (VISITED_CAPACITY - 1);
+        while (this.visited[slot] != EMPTY) {
+            if (this.visited[slot] == pos) {
+                return false;
+            }
+            slot = (slot + 1) & (VISITED_CAPACITY - 1);
+        }
+        this.visited[slot] = pos;
+        this.visitedCount++;
+        return true;
+    }
+
+    private void offer(long pos, int leafSteps) {
+        // A frontier this wide is no single tree; the rest of it is left out
+        if (this.size == QUEUE_CAPACITY) {
+            return;
+        }
+        int tail = (this.head + this.size) & (QUEUE_CAPACITY - 1);
+        this.queue[tail] = pos;
+        this.queueLeafSteps[tail] = (byte) leafSteps;
+        this.size++;
+    }
+}
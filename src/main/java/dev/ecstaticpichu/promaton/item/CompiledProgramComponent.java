@@ -0,0 +1,62 @@
+package dev.ecstaticpichu.promaton.item;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compiled form of a Program book, stored on the stack so tables can skip compiling it again.
+ * Only valid while {@code sourceHash} still matches the book text.
+ */
+public record CompiledProgramComponent(long sourceHash, byte[] image) {
+
+    private static final Codec<byte[]> BYTES = Codec.BYTE_BUFFER.xmap(buffer -> {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }, ByteBuffer::wrap);
+
+    public static final Codec<CompiledProgramComponent> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.LONG.fieldOf("source_hash").forGetter(CompiledProgramComponent::sourceHash),
+            BYTES.fieldOf("image").forGetter(CompiledProgramComponent::image)
+    ).apply(instance, CompiledProgramComponent::new));
+
+    public static final StreamCodec<ByteBuf, CompiledProgramComponent> STREAM_CODEC = StreamCodec.composite(
+            ByteBufCodecs.VAR_LONG, CompiledProgramComponent::sourceHash,
+            ByteBufCodecs.BYTE_ARRAY, CompiledProgramComponent::image,
+            CompiledProgramComponent::new
+    );
+
+    public static CompiledProgramComponent of(CompiledProgram program) {
+        return new CompiledProgramComponent(program.getSourceHash(), program.toImage());
+    }
+
+    /**
+     * Whether this image was compiled from text with {@code sourceHash} by the current image format.
+     */
+    public boolean matches(long sourceHash) {
+        return this.sourceHash == sourceHash
+                && this.image.length >= Integer.BYTES
+                && ByteBuffer.wrap(this.image).getInt() == CompiledProgram.IMAGE_VERSION;
+    }
+
+    // Arrays compare by identity in records; stacks only merge if the images really match
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CompiledProgramComponent that
+                && this.sourceHash == that.sourceHash
+                && Arrays.equals(this.image, that.image);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.sourceHash) * 31 + Arrays.hashCode(this.image);
+    }
+}
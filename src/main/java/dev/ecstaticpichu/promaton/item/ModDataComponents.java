@@ -0,0 +1,25 @@
+package dev.ecstaticpichu.promaton.item;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import net.minecraft.core.Registry;
+import net.minecraft.core.component.DataComponentType;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+
+import java.util.function.UnaryOperator;
+
+public class ModDataComponents {
+
+    public static <T> DataComponentType<T> register(String name, UnaryOperator<DataComponentType.Builder<T>> builder) {
+        return Registry.register(BuiltInRegistries.DATA_COMPONENT_TYPE,
+                Identifier.fromNamespaceAndPath(ProgrammableAutomatons.MOD_ID, name),
+                builder.apply(DataComponentType.builder()).build());
+    }
+
+    public static final DataComponentType<CompiledProgramComponent> COMPILED_PROGRAM = register("compiled_program",
+            builder -> builder.persistent(CompiledProgramComponent.CODEC).networkSynchronized(CompiledProgramComponent.STREAM_CODEC));
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Data Components for " + ProgrammableAutomatons.MOD_ID);
+    }
+}
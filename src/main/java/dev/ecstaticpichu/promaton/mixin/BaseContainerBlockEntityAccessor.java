@@ -0,0 +1,16 @@
+package dev.ecstaticpichu.promaton.mixin;
+
+import net.minecraft.core.NonNullList;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.block.entity.BaseContainerBlockEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(BaseContainerBlockEntity.class)
+public interface BaseContainerBlockEntityAccessor {
+	/**
+	 * The slots themselves, for writes that should not mark the container changed on their own.
+	 */
+	@Invoker("getItems")
+	NonNullList<ItemStack> promaton$getItems();
+}
@@ -0,0 +1,44 @@
+package dev.ecstaticpichu.promaton.mixin;
+
+import dev.ecstaticpichu.promaton.entity.task.ContainerContents;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(BlockEntity.class)
+public class BlockEntityMixin implements ContainerContents.Holder {
+	@Unique
+	@Nullable
+	private ContainerContents promaton$contents = null;
+
+	@Inject(at = @At("HEAD"), method = "setChanged()V")
+	private void promaton$dropContents(CallbackInfo info) {
+		this.promaton$contents = null;
+	}
+
+	// Furnaces and brewing stands change their slots in place and only call the static overload
+	@Inject(at = @At("HEAD"), method = "setChanged(Lnet/minecraft/world/level/Level;Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/level/block/state/BlockState;)V")
+	private static void promaton$dropContentsAt(Level level, BlockPos pos, BlockState state, CallbackInfo info) {
+		if (level.getBlockEntity(pos) instanceof ContainerContents.Holder holder) {
+			holder.promaton$setContents(null);
+		}
+	}
+
+	@Override
+	@Nullable
+	public ContainerContents promaton$getContents() {
+		return this.promaton$contents;
+	}
+
+	@Override
+	public void promaton$setContents(@Nullable ContainerContents contents) {
+		this.promaton$contents = contents;
+	}
+}
@@ -0,0 +1,23 @@
+package dev.ecstaticpichu.promaton.mixin;
+
+import dev.ecstaticpichu.promaton.entity.PickupRegistry;
+import net.minecraft.world.entity.item.ItemEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ItemEntity.class)
+public class ItemEntityMixin {
+	@Unique
+	private int promaton$pickupGeneration = 0;
+
+	@Inject(at = @At("TAIL"), method = "tick")
+	private void promaton$offerPickup(CallbackInfo info) {
+		ItemEntity self = (ItemEntity) (Object) this;
+		if (!self.level().isClientSide()) {
+			this.promaton$pickupGeneration = PickupRegistry.onItemTick(self, this.promaton$pickupGeneration);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package dev.ecstaticpichu.promaton.mixin;
+
+import dev.ecstaticpichu.promaton.entity.BlockIndex;
+import dev.ecstaticpichu.promaton.path.RegionGraph;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(LevelChunk.class)
+public class LevelChunkMixin {
+	@Inject(at = @At("RETURN"), method = "setBlockState")
+	private void promaton$onBlockChanged(BlockPos pos, BlockState state, int flags, CallbackInfoReturnable<BlockState> info) {
+		// Null when nothing changed
+		BlockState previous = info.getReturnValue();
+		if (previous != null && ((LevelChunk) (Object) this).getLevel() instanceof ServerLevel level) {
+			RegionGraph.onBlockChanged(level, pos, previous, state);
+			BlockIndex.onBlockChanged(level, pos, previous, state);
+		}
+	}
+}
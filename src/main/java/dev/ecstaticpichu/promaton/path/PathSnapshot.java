@@ -0,0 +1,218 @@
+package dev.ecstaticpichu.promaton.path;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.EmptyBlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What one path search can see of the world: a corridor of chunk sections between its two ends,
+ * captured on the server thread and read by a worker. Sections the {@link RegionGraph} already has
+ * regions for are taken as they are; the others are copied as block palettes, and their regions
+ * are built on the worker and shared back through the graph's cache.
+ *
+ * <p>Used by one thread at a time: the worker while it searches, then the server thread while
+ * the automaton follows the path.
+ */
+final class PathSnapshot {
+
+    // Chunks searched along the line between the ends, and to either side of it
+    private static final int CORRIDOR_LENGTH = 12;
+    private static final int CORRIDOR_RADIUS = 2;
+    // Sections searched above and below the ends
+    private static final int VERTICAL_MARGIN = 1;
+
+    private final ConcurrentHashMap<Long, SectionRegions> cache;
+    // Version of every section in the corridor, at capture
+    private final Long2IntOpenHashMap versions = new Long2IntOpenHashMap();
+    private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>> states = new Long2ObjectOpenHashMap<>();
+    private final LongOpenHashSet airSections = new LongOpenHashSet();
+    // Regions of the sections looked at so far; null where a section is outside the corridor
+    private final Long2ObjectOpenHashMap<SectionRegions> sections = new Long2ObjectOpenHashMap<>();
+    private final Map<Region, Region.Portal[]> portals = new IdentityHashMap<>();
+    private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+    private PathSnapshot(ConcurrentHashMap<Long, SectionRegions> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Copies the corridor from {@code from} towards {@code to}, at most {@link #CORRIDOR_LENGTH}
+     * chunks long. Chunks that are not loaded are left out.
+     */
+    static PathSnapshot capture(RegionGraph graph, ServerLevel level, long from, long to) {
+        PathSnapshot snapshot = new PathSnapshot(graph.cache);
+        int fromX = SectionPos.blockToSectionCoord(BlockPos.getX(from));
+        int fromZ = SectionPos.blockToSectionCoord(BlockPos.getZ(from));
+        int dx = SectionPos.blockToSectionCoord(BlockPos.getX(to)) - fromX;
+        int dz = SectionPos.blockToSectionCoord(BlockPos.getZ(to)) - fromZ;
+        int length = Math.max(1, Math.max(Math.abs(dx), Math.abs(dz)));
+        int minY = Math.max(level.getMinSectionY(),
+                SectionPos.blockToSectionCoord(Math.min(BlockPos.getY(from), BlockPos.getY(to))) - VERTICAL_MARGIN);
+        int maxY = Math.min(level.getMaxSectionY(),
+                SectionPos.blockToSectionCoord(Math.max(BlockPos.getY(from), BlockPos.getY(to))) + VERTICAL_MARGIN);
+
+        LongOpenHashSet chunks = new LongOpenHashSet();
+        for (int i = 0; i <= Math.min(length, CORRIDOR_LENGTH); i++) {
+            int chunkX = fromX + dx * i / length;
+            int chunkZ = fromZ + dz * i / length;
+            for (int offsetX = -CORRIDOR_RADIUS; offsetX <= CORRIDOR_RADIUS; offsetX++) {
+                for (int offsetZ = -CORRIDOR_RADIUS; offsetZ <= CORRIDOR_RADIUS; offsetZ++) {
+                    chunks.add(ChunkPos.asLong(chunkX + offsetX, chunkZ + offsetZ));
+                }
+            }
+        }
+
+        for (long packed : chunks) {
+            int chunkX = ChunkPos.getX(packed);
+            int chunkZ = ChunkPos.getZ(packed);
+            LevelChunk chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+            if (chunk == null) {
+                continue;
+            }
+            for (int sectionY = minY; sectionY <= maxY; sectionY++) {
+                long key = SectionPos.asLong(chunkX, sectionY, chunkZ);
+                int version = graph.getVersion(key);
+                snapshot.versions.put(key, version);
+                SectionRegions cached = graph.cache.get(key);
+                if (cached != null && cached.version == version) {
+                    snapshot.sections.put(key, cached);
+                    continue;
+                }
+                LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+                if (section.hasOnlyAir()) {
+                    snapshot.airSections.add(key);
+                } else {
+                    snapshot.states.put(key, section.getStates().copy());
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    // --- Sections ---
+
+    /**
+     * Regions of a section, built from its copied blocks on first use. Null outside the corridor.
+     */
+    @Nullable
+    SectionRegions getSection(long key) {
+        SectionRegions section = this.sections.get(key);
+        if (section != null || this.sections.containsKey(key)) {
+            return section;
+        }
+        if (this.versions.containsKey(key)) {
+            int version = this.versions.get(key);
+            section = this.cache.get(key);
+            if (section == null || section.version != version) {
+                section = SectionRegions.build(this, key, version);
+                SectionRegions built = section;
+                this.cache.compute(key, (k, old) -> old == null || old.version != version ? built : old);
+            }
+        }
+        this.sections.put(key, section);
+        return section;
+    }
+
+    @Nullable
+    Region regionAt(int x, int y, int z) {
+        SectionRegions section = this.getSection(SectionPos.asLong(
+                SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(y), SectionPos.blockToSectionCoord(z)));
+        return section == null ? null : section.regionAt(x, y, z);
+    }
+
+    @Nullable
+    Region regionAt(long pos) {
+        return this.regionAt(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos));
+    }
+
+    /**
+     * Walkability of a block, from regions already built or the copied blocks. Never builds
+     * anything itself. Blocks outside the corridor count as {@link Walkability#BLOCKED}.
+     */
+    byte readKind(int x, int y, int z) {
+        long key = SectionPos.asLong(SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(y), SectionPos.blockToSectionCoord(z));
+        SectionRegions section = this.sections.get(key);
+        if (section != null) {
+            return section.kindAt(x, y, z);
+        }
+        PalettedContainer<BlockState> states = this.states.get(key);
+        if (states != null) {
+            this.pos.set(x, y, z);
+            // Off the server thread there is no world to ask; shapes that depend on one are rare
+            return Walkability.kind(states.get(x & 15, y & 15, z & 15), EmptyBlockGetter.INSTANCE, this.pos);
+        }
+        return this.airSections.contains(key) ? Walkability.PASSABLE : Walkability.BLOCKED;
+    }
+
+    // --- Portals ---
+
+    /**
+     * Ways out of a region into neighbouring ones, built for its whole section on first use.
+     */
+    Region.Portal[] getPortals(Region region) {
+        Region.Portal[] found = this.portals.get(region);
+        if (found == null) {
+            this.buildPortals(region.section);
+            found = this.portals.get(region);
+        }
+        return found;
+    }
+
+    private void buildPortals(SectionRegions section) {
+        List<Map<Region, Region.Portal>> found = new ArrayList<>(section.regions.length);
+        for (int i = 0; i < section.regions.length; i++) {
+            found.add(new IdentityHashMap<>());
+        }
+        for (int cell = 0; cell < 4096; cell++) {
+            int x = section.originX + (cell & 15);
+            int y = section.originY + (cell >> 8);
+            int z = section.originZ + ((cell >> 4) & 15);
+            Region from = section.regionAt(x, y, z);
+            if (from == null) {
+                continue;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int nx = x + Walkability.DX[direction];
+                int nz = z + Walkability.DZ[direction];
+                for (int dy = -Walkability.MAX_DROP; dy <= 1; dy++) {
+                    Region to = this.regionAt(nx, y + dy, nz);
+                    if (to == null || to == from || found.get(from.index).containsKey(to) || !this.canStep(x, y, z, nx, y + dy, nz)) {
+                        continue;
+                    }
+                    found.get(from.index).put(to, new Region.Portal(to, BlockPos.asLong(x, y, z), BlockPos.asLong(nx, y + dy, nz)));
+                }
+            }
+        }
+        for (Region region : section.regions) {
+            this.portals.put(region, found.get(region.index).values().toArray(new Region.Portal[0]));
+        }
+    }
+
+    private boolean canStep(int x, int y, int z, int nx, int ny, int nz) {
+        if (ny > y) {
+            return this.readKind(x, y + 2, z) == Walkability.PASSABLE;
+        }
+        for (int fall = ny + 2; fall <= y + 1; fall++) {
+            if (this.readKind(nx, fall, nz) != Walkability.PASSABLE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package dev.ecstaticpichu.promaton.path;
+
+/**
+ * A node of the region graph: cells of one chunk section an automaton can walk between. Immutable,
+ * like the {@link SectionRegions} it belongs to, so searches on different threads can share it.
+ */
+final class Region {
+
+    final SectionRegions section;
+    final short index;
+    // Packed position of the cell nearest the section's centre
+    final long centre;
+
+    Region(SectionRegions section, short index, long centre) {
+        this.section = section;
+        this.index = index;
+        this.centre = centre;
+    }
+
+    /**
+     * A step out of a region: from {@code exit}, its last cell, onto {@code entry} in {@code to}.
+     */
+    record Portal(Region to, long exit, long entry) {
+    }
+}
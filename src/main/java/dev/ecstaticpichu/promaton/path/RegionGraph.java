@@ -0,0 +1,111 @@
+package dev.ecstaticpichu.promaton.path;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.Util;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-dimension graph of {@link SectionRegions}, linked by portals between regions, searched for
+ * long walks on background threads.
+ *
+ * <p>Every chunk section has a version, bumped on the server thread whenever a block in or near
+ * it changes in a way that makes a difference to walking. Regions are built by searches from
+ * snapshots and cached per section with the version they were built at; a cached section whose
+ * version has moved on is built again by the next search that needs it. Paths keep the versions
+ * they were found against, so a changed section shows up when it is delivered or walked through.
+ */
+public final class RegionGraph {
+
+    private static final Map<Level, RegionGraph> graphs = new IdentityHashMap<>();
+
+    private final ServerLevel level;
+    // Only touched on the server thread
+    private final Long2IntOpenHashMap versions = new Long2IntOpenHashMap();
+    // Filled in by searches on any thread
+    final ConcurrentHashMap<Long, SectionRegions> cache = new ConcurrentHashMap<>();
+    // Scratch space for SectionRegions.findWalk while following paths, on the server thread
+    final int[] parents = new int[4096];
+    final int[] queue = new int[4096];
+
+    private RegionGraph(ServerLevel level) {
+        this.level = level;
+    }
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Region Graph for " + ProgrammableAutomatons.MOD_ID);
+        ServerChunkEvents.CHUNK_UNLOAD.register((level, chunk) -> {
+            RegionGraph graph = graphs.get(level);
+            if (graph != null) {
+                graph.invalidateColumn(chunk.getPos());
+            }
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> graphs.clear());
+    }
+
+    public static RegionGraph get(ServerLevel level) {
+        return graphs.computeIfAbsent(level, key -> new RegionGraph(level));
+    }
+
+    /**
+     * Called for every block change in a server level.
+     */
+    public static void onBlockChanged(ServerLevel level, BlockPos pos, BlockState previous, BlockState state) {
+        RegionGraph graph = graphs.get(level);
+        if (graph == null || Walkability.kind(previous, level, pos) == Walkability.kind(state, level, pos)) {
+            return;
+        }
+        // A block is a floor, feet, head, jump room or fall room for cells from four below to one above
+        int sectionX = SectionPos.blockToSectionCoord(pos.getX());
+        int sectionZ = SectionPos.blockToSectionCoord(pos.getZ());
+        int top = SectionPos.blockToSectionCoord(pos.getY() + 1);
+        for (int sectionY = SectionPos.blockToSectionCoord(pos.getY() - Walkability.MAX_DROP - 1); sectionY <= top; sectionY++) {
+            graph.invalidate(SectionPos.asLong(sectionX, sectionY, sectionZ));
+        }
+    }
+
+    // --- Searches ---
+
+    /**
+     * Starts a search from the cell an automaton stands in to one next to {@code to}, over a
+     * snapshot taken now. The result is null if no progress towards {@code to} is possible; it may
+     * already be out of date by the time it is done, see {@link RegionPath#isCurrent()}.
+     */
+    public CompletableFuture<RegionPath> findPath(BlockPos from, long to) {
+        PathSnapshot snapshot = PathSnapshot.capture(this, this.level, from.asLong(), to);
+        long start = from.asLong();
+        return CompletableFuture.supplyAsync(() -> RegionPath.find(this, snapshot, start, to), Util.backgroundExecutor())
+                .exceptionally(error -> {
+                    ProgrammableAutomatons.LOGGER.warn("Path search from {} failed", from, error);
+                    return null;
+                });
+    }
+
+    int getVersion(long key) {
+        return this.versions.get(key);
+    }
+
+    private void invalidate(long key) {
+        this.versions.addTo(key, 1);
+        this.cache.remove(key);
+    }
+
+    private void invalidateColumn(ChunkPos chunk) {
+        // Blocks are the same when the chunk comes back, so versions stay; the regions are just memory
+        for (int sectionY = this.level.getMinSectionY(); sectionY <= this.level.getMaxSectionY(); sectionY++) {
+            this.cache.remove(SectionPos.asLong(chunk.x, sectionY, chunk.z));
+        }
+    }
+}
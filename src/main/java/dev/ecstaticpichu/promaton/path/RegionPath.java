@@ -0,0 +1,291 @@
+package dev.ecstaticpichu.promaton.path;
+
+import net.minecraft.core.BlockPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A long walk found by A* over the {@link RegionGraph}: the regions to pass through and the portal
+ * between each pair. Only the stretch through the region the automaton is in is worked out cell by
+ * cell, when it gets there, so a path across hundreds of blocks costs a few hundred region
+ * expansions up front and one small search per chunk section on the way.
+ *
+ * <p>Found on a background thread over a {@link PathSnapshot}; followed on the server thread,
+ * which checks each section against its current version before walking into it.
+ */
+public final class RegionPath {
+
+    public enum Status {
+        MOVING,
+        ARRIVED,
+        // The world changed under the path, or the automaton left it; find a new one
+        STALE
+    }
+
+    // Outside the world border, so never a real cell
+    private static final long NOWHERE = Long.MIN_VALUE;
+    private static final int MAX_EXPANSIONS = 2048;
+    // Cells of a straight stretch steered at in one go
+    private static final int MAX_STRETCH = 8;
+
+    private final RegionGraph graph;
+    private final PathSnapshot snapshot;
+    private final Region[] regions;
+    // portals[i] leads from regions[i] into regions[i + 1]
+    private final Region.Portal[] portals;
+    private final long goal;
+    private final boolean complete;
+    private int hop = 0;
+    @Nullable
+    private long[] walk = null;
+    private int walkIndex = 0;
+    private long target;
+    private int progress = 0;
+
+    private RegionPath(RegionGraph graph, PathSnapshot snapshot, Region[] regions, Region.Portal[] portals, long goal, boolean complete) {
+        this.graph = graph;
+        this.snapshot = snapshot;
+        this.regions = regions;
+        this.portals = portals;
+        this.goal = goal;
+        this.complete = complete;
+        this.target = goal;
+    }
+
+    private record Node(Region region, long at, double cost, double estimate,
+                        @Nullable Node parent, @Nullable Region.Portal via) {
+    }
+
+    /**
+     * Searches from the cell an automaton stands in to a cell next to {@code to}. If the goal is
+     * not reached within the search budget or the snapshot, the path leads as close to it as the
+     * search got. Runs on any thread.
+     *
+     * @return null if the start is not a standable cell in the snapshot, or no progress is possible
+     */
+    @Nullable
+    static RegionPath find(RegionGraph graph, PathSnapshot snapshot, long from, long to) {
+        long start = locate(snapshot, BlockPos.getX(from), BlockPos.getY(from), BlockPos.getZ(from), 0);
+        long goal = locate(snapshot, BlockPos.getX(to), BlockPos.getY(to), BlockPos.getZ(to), 2);
+        Region startRegion = start == NOWHERE ? null : snapshot.regionAt(start);
+        // Past the end of the snapshot the search heads for the best region it can see
+        Region goalRegion = goal == NOWHERE ? null : snapshot.regionAt(goal);
+        if (startRegion == null) {
+            return null;
+        }
+        if (goal == NOWHERE) {
+            goal = to;
+        }
+
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingDouble(Node::estimate));
+        Map<Region, Double> costs = new IdentityHashMap<>();
+        Set<Region> closed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Node first = new Node(startRegion, start, 0.0, distance(start, goal), null, null);
+        open.add(first);
+        costs.put(startRegion, 0.0);
+        Node best = first;
+        boolean found = false;
+        int expansions = 0;
+        while (!open.isEmpty() && expansions < MAX_EXPANSIONS) {
+            Node node = open.poll();
+            if (!closed.add(node.region)) {
+                continue;
+            }
+            expansions++;
+            if (node.region == goalRegion) {
+                best = node;
+                found = true;
+                break;
+            }
+            if (node.estimate - node.cost < best.estimate - best.cost) {
+                best = node;
+            }
+            for (Region.Portal portal : snapshot.getPortals(node.region)) {
+                if (closed.contains(portal.to())) {
+                    continue;
+                }
+                double cost = node.cost + distance(node.at, portal.exit()) + 1.0;
+                Double known = costs.get(portal.to());
+                if (known == null || cost < known) {
+                    costs.put(portal.to(), cost);
+                    open.add(new Node(portal.to(), portal.entry(), cost, cost + distance(portal.entry(), goal), node, portal));
+                }
+            }
+        }
+        if (best == first && !found) {
+            return null;
+        }
+
+        Deque<Node> chain = new ArrayDeque<>();
+        for (Node node = best; node != null; node = node.parent) {
+            chain.addFirst(node);
+        }
+        Region[] regions = new Region[chain.size()];
+        Region.Portal[] portals = new Region.Portal[chain.size() - 1];
+        int i = 0;
+        for (Node node : chain) {
+            regions[i] = node.region;
+            if (node.via != null) {
+                portals[i - 1] = node.via;
+            }
+            i++;
+        }
+        return new RegionPath(graph, snapshot, regions, portals, found ? goal : best.at, found);
+    }
+
+    /**
+     * A standable cell at {@code x, y, z}, or one or two blocks off it when {@code radius} allows,
+     * nearest first. Cells a block up and down are always tried, for automatons standing on
+     * something lower than a full block or in the middle of a jump.
+     *
+     * @return the packed cell, or {@link #NOWHERE}
+     */
+    private static long locate(PathSnapshot snapshot, int x, int y, int z, int radius) {
+        long found = NOWHERE;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    int distance = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+                    if (distance < bestDistance && snapshot.regionAt(x + dx, y + dy, z + dz) != null) {
+                        bestDistance = distance;
+                        found = BlockPos.asLong(x + dx, y + dy, z + dz);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static double distance(long a, long b) {
+        double dx = BlockPos.getX(a) - BlockPos.getX(b);
+        double dy = BlockPos.getY(a) - BlockPos.getY(b);
+        double dz = BlockPos.getZ(a) - BlockPos.getZ(b);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // --- Following ---
+
+    /**
+     * Moves along the path from where the automaton now stands. On {@link Status#MOVING}, steer
+     * towards {@link #getTarget()}.
+     */
+    public Status advance(BlockPos feet) {
+        long cell = locate(this.snapshot, feet.getX(), feet.getY(), feet.getZ(), 0);
+        Region here = cell == NOWHERE ? null : this.snapshot.regionAt(cell);
+        if (here == null) {
+            // Mid-jump or mid-fall; keep steering where we were
+            return Status.MOVING;
+        }
+        int at = this.hop;
+        while (at < this.regions.length && this.regions[at] != here) {
+            at++;
+        }
+        if (at == this.regions.length || !this.isCurrent(here)
+                || (at + 1 < this.regions.length && !this.isCurrent(this.regions[at + 1]))) {
+            return Status.STALE;
+        }
+        if (at != this.hop) {
+            this.hop = at;
+            this.walk = null;
+            this.progress++;
+        }
+
+        long destination = this.hop < this.portals.length ? this.portals[this.hop].exit() : this.goal;
+        int index = this.indexInWalk(cell);
+        if (index < 0) {
+            this.walk = here.section.findWalk(cell, destination, this.graph.parents, this.graph.queue);
+            if (this.walk == null) {
+                return Status.STALE;
+            }
+            this.walkIndex = 0;
+        } else if (index > this.walkIndex) {
+            this.walkIndex = index;
+            this.progress++;
+        }
+
+        if (this.walkIndex == this.walk.length - 1) {
+            if (this.hop == this.portals.length) {
+                return Status.ARRIVED;
+            }
+            this.target = this.portals[this.hop].entry();
+            return Status.MOVING;
+        }
+        this.target = this.walk[this.straightTo(this.walkIndex)];
+        return Status.MOVING;
+    }
+
+    /**
+     * Whether the world is still as it was when the path was found, everywhere along it.
+     */
+    public boolean isCurrent() {
+        for (Region region : this.regions) {
+            if (!this.isCurrent(region)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isCurrent(Region region) {
+        return this.graph.getVersion(region.section.key) == region.section.version;
+    }
+
+    private int indexInWalk(long cell) {
+        if (this.walk == null) {
+            return -1;
+        }
+        for (int i = this.walkIndex; i < this.walk.length; i++) {
+            if (this.walk[i] == cell) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The furthest cell that can be reached from {@code from} walking in a straight level line.
+     */
+    private int straightTo(int from) {
+        long[] walk = this.walk;
+        int end = from + 1;
+        int dx = BlockPos.getX(walk[end]) - BlockPos.getX(walk[from]);
+        int dz = BlockPos.getZ(walk[end]) - BlockPos.getZ(walk[from]);
+        while (end + 1 < walk.length && end - from < MAX_STRETCH
+                && BlockPos.getY(walk[end + 1]) == BlockPos.getY(walk[from])
+                && BlockPos.getX(walk[end + 1]) - BlockPos.getX(walk[end]) == dx
+                && BlockPos.getZ(walk[end + 1]) - BlockPos.getZ(walk[end]) == dz) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Packed position of the cell to steer towards.
+     */
+    public long getTarget() {
+        return target;
+    }
+
+    /**
+     * Goes up every time the automaton gets further along the path.
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    /**
+     * False when the search ran out of budget and the path only leads part of the way.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,214 @@
+package dev.ecstaticpichu.promaton.path;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The standable cells of one chunk section, split into regions: sets of cells an automaton can
+ * walk between without leaving the section. Built with one pass over the section's blocks (and a
+ * layer above and below), never changed afterwards, and replaced whole once one of them changes,
+ * which bumps the section's version in the {@link RegionGraph}.
+ *
+ * <p>Cells are indexed {@code y << 8 | z << 4 | x} in section-local coordinates.
+ */
+final class SectionRegions {
+
+    // Local layers -1 to 17: floors under the bottom layer, heads and jump room over the top one
+    static final int LAYERS = 19;
+
+    final long key;
+    final int version;
+    final int originX;
+    final int originY;
+    final int originZ;
+    // Walkability of each block, by layer; also answers for neighbours built after this one
+    private final byte[] kinds = new byte[LAYERS << 8];
+    // Region of each cell, or -1 where no automaton can stand
+    private final short[] ids = new short[4096];
+    // Steps within the section from each cell, one bit per direction and height change (-1, 0, +1)
+    private final short[] moves = new short[4096];
+    final Region[] regions;
+
+    private SectionRegions(PathSnapshot snapshot, long key, int version) {
+        this.key = key;
+        this.version = version;
+        this.originX = SectionPos.sectionToBlockCoord(SectionPos.x(key));
+        this.originY = SectionPos.sectionToBlockCoord(SectionPos.y(key));
+        this.originZ = SectionPos.sectionToBlockCoord(SectionPos.z(key));
+
+        byte[] kinds = this.kinds;
+        for (int y = -1; y < LAYERS - 1; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    kinds[(y + 1) << 8 | z << 4 | x] = snapshot.readKind(this.originX + x, this.originY + y, this.originZ + z);
+                }
+            }
+        }
+
+        Arrays.fill(this.ids, (short) -1);
+        for (int cell = 0; cell < 4096; cell++) {
+            if (isStandable(kinds, cell)) {
+                this.ids[cell] = -2;
+            }
+        }
+        for (int cell = 0; cell < 4096; cell++) {
+            if (this.ids[cell] != -1) {
+                this.moves[cell] = this.findMoves(kinds, cell);
+            }
+        }
+
+        // Flood fill each region over the in-section steps, which all work both ways
+        Region[] regions = new Region[16];
+        int count = 0;
+        int[] queue = new int[4096];
+        for (int start = 0; start < 4096; start++) {
+            if (this.ids[start] != -2) {
+                continue;
+            }
+            short id = (short) count;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            this.ids[start] = id;
+            int rep = start;
+            while (head < tail) {
+                int cell = queue[head++];
+                if (distanceToCentre(cell) < distanceToCentre(rep)) {
+                    rep = cell;
+                }
+                for (int move = this.moves[cell]; move != 0; move &= move - 1) {
+                    int next = step(cell, Integer.numberOfTrailingZeros(move));
+                    if (this.ids[next] == -2) {
+                        this.ids[next] = id;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            if (count == regions.length) {
+                regions = Arrays.copyOf(regions, count * 2);
+            }
+            regions[count++] = new Region(this, id, this.toBlock(rep));
+        }
+        this.regions = Arrays.copyOf(regions, count);
+    }
+
+    static SectionRegions build(PathSnapshot snapshot, long key, int version) {
+        return new SectionRegions(snapshot, key, version);
+    }
+
+    private static boolean isStandable(byte[] kinds, int cell) {
+        int layer = (cell >> 8) + 1;
+        int column = cell & 0xFF;
+        return kinds[(layer - 1) << 8 | column] == Walkability.FLOOR
+                && kinds[layer << 8 | column] == Walkability.PASSABLE
+                && kinds[(layer + 1) << 8 | column] == Walkability.PASSABLE;
+    }
+
+    private short findMoves(byte[] kinds, int cell) {
+        int x = cell & 15;
+        int y = cell >> 8;
+        int z = (cell >> 4) & 15;
+        short mask = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            int nx = x + Walkability.DX[direction];
+            int nz = z + Walkability.DZ[direction];
+            if (nx < 0 || nx > 15 || nz < 0 || nz > 15) {
+                continue;
+            }
+            for (int dy = -1; dy <= 1; dy++) {
+                int ny = y + dy;
+                if (ny < 0 || ny > 15 || this.ids[ny << 8 | nz << 4 | nx] == -1) {
+                    continue;
+                }
+                // Up needs room to jump over this cell; down needs room to fall past the next one
+                if (dy == 1 && kinds[(y + 3) << 8 | z << 4 | x] != Walkability.PASSABLE) {
+                    continue;
+                }
+                if (dy == -1 && kinds[(y + 2) << 8 | nz << 4 | nx] != Walkability.PASSABLE) {
+                    continue;
+                }
+                mask |= (short) (1 << (direction * 3 + dy + 1));
+            }
+        }
+        return mask;
+    }
+
+    private static int step(int cell, int move) {
+        int direction = move / 3;
+        int dy = move % 3 - 1;
+        return cell + (dy << 8) + (Walkability.DZ[direction] << 4) + Walkability.DX[direction];
+    }
+
+    private static int distanceToCentre(int cell) {
+        return Math.abs((cell & 15) - 8) + Math.abs(((cell >> 4) & 15) - 8) + Math.abs((cell >> 8) - 8);
+    }
+
+    // --- Cells ---
+
+    int toCell(long pos) {
+        return (BlockPos.getY(pos) - this.originY) << 8 | (BlockPos.getZ(pos) - this.originZ) << 4 | (BlockPos.getX(pos) - this.originX);
+    }
+
+    long toBlock(int cell) {
+        return BlockPos.asLong(this.originX + (cell & 15), this.originY + (cell >> 8), this.originZ + ((cell >> 4) & 15));
+    }
+
+    /**
+     * The region of a cell in this section, or null if no automaton can stand there.
+     */
+    @Nullable
+    Region regionAt(int x, int y, int z) {
+        short id = this.ids[(y - this.originY) << 8 | (z - this.originZ) << 4 | (x - this.originX)];
+        return id < 0 ? null : this.regions[id];
+    }
+
+    /**
+     * Shortest walk between two cells of the same region, by breadth-first search over its steps.
+     * {@code parents} and {@code queue} are scratch space of 4096 entries each.
+     *
+     * @return packed positions from {@code from} to {@code to} inclusive, or null if they are not
+     * in one region
+     */
+    @Nullable
+    long[] findWalk(long from, long to, int[] parents, int[] queue) {
+        int start = this.toCell(from);
+        int goal = this.toCell(to);
+        if (this.ids[start] < 0 || this.ids[start] != this.ids[goal]) {
+            return null;
+        }
+        Arrays.fill(parents, -1);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        parents[start] = start;
+        while (head < tail && parents[goal] == -1) {
+            int cell = queue[head++];
+            for (int move = this.moves[cell]; move != 0; move &= move - 1) {
+                int next = step(cell, Integer.numberOfTrailingZeros(move));
+                if (parents[next] == -1) {
+                    parents[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        int length = 1;
+        for (int cell = goal; cell != start; cell = parents[cell]) {
+            length++;
+        }
+        long[] walk = new long[length];
+        for (int cell = goal, i = length - 1; i >= 0; cell = parents[cell], i--) {
+            walk[i] = this.toBlock(cell);
+        }
+        return walk;
+    }
+
+    /**
+     * Walkability of a block of this section, or of the layer just below or the two just above.
+     */
+    byte kindAt(int x, int y, int z) {
+        return this.kinds[(y - this.originY + 1) << 8 | (z - this.originZ) << 4 | (x - this.originX)];
+    }
+}
@@ -0,0 +1,43 @@
+package dev.ecstaticpichu.promaton.path;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.FluidTags;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.shapes.VoxelShape;
+
+/**
+ * How an automaton sees a block when walking: something to pass through, something to stand on,
+ * or neither. A cell is standable when its feet and head blocks are passable and the block under
+ * it is a floor. Between horizontally adjacent cells it can step up one block, and drop down up to
+ * {@link #MAX_DROP}.
+ */
+final class Walkability {
+
+    static final byte PASSABLE = 0;
+    static final byte FLOOR = 1;
+    static final byte BLOCKED = 2;
+
+    static final int MAX_DROP = 3;
+
+    // Horizontal step directions: +x, -x, +z, -z
+    static final int[] DX = {1, -1, 0, 0};
+    static final int[] DZ = {0, 0, 1, -1};
+
+    private Walkability() {
+    }
+
+    static byte kind(BlockState state, BlockGetter level, BlockPos pos) {
+        if (state.is(BlockTags.FIRE) || state.getFluidState().is(FluidTags.LAVA)) {
+            return BLOCKED;
+        }
+        VoxelShape shape = state.getCollisionShape(level, pos);
+        if (shape.isEmpty()) {
+            return PASSABLE;
+        }
+        // Fences and walls cannot be stepped onto
+        return shape.max(Direction.Axis.Y) <= 1.0 ? FLOOR : BLOCKED;
+    }
+}
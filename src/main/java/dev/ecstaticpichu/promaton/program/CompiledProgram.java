@@ -0,0 +1,589 @@
+package dev.ecstaticpichu.promaton.program;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable instruction image of a Program book. Instructions are {@link #INSN_WIDTH} ints wide
+ * (opcode followed by three operands); names, coordinates and categories live in side tables that
+ * operands index into.
+ */
+public final class CompiledProgram {
+
+    public static final int INSN_WIDTH = 4;
+    // Bump whenever the opcode set or the image layout changes; stale images are then recompiled
+    public static final int IMAGE_VERSION = 1;
+
+    public static final int NONE = -1;
+    public static final int HOME = -2;
+    public static final int CURSOR = -3;
+
+    private final long sourceHash;
+    private final int[] code;
+    private final int[] lines;
+    private final String[] items;
+    private final String[] waypointNames;
+    private final int[] waypointCoords;
+    private final byte[] waypointRelative;
+    private final String[] routeNames;
+    private final int[][] routes;
+    private final String[] categoryNames;
+    private final String[][] categoryMembers;
+    private final String[][] categoryItems;
+    private final Condition[] conditions;
+    private final Map<String, String> settings;
+    private final Map<String, Integer> triggers;
+    private final int[] triggerPcs;
+    private final int loopSlots;
+
+    CompiledProgram(long sourceHash, int[] code, int[] lines, String[] items,
+                    String[] waypointNames, int[] waypointCoords, byte[] waypointRelative,
+                    String[] routeNames, int[][] routes,
+                    String[] categoryNames, String[][] categoryMembers,
+                    Condition[] conditions, Map<String, String> settings,
+                    Map<String, Integer> triggers, int loopSlots) {
+        this.sourceHash = sourceHash;
+        this.code = code;
+        this.lines = lines;
+        this.items = items;
+        this.waypointNames = waypointNames;
+        this.waypointCoords = waypointCoords;
+        this.waypointRelative = waypointRelative;
+        this.routeNames = routeNames;
+        this.routes = routes;
+        this.categoryNames = categoryNames;
+        this.categoryMembers = categoryMembers;
+        this.categoryItems = new String[categoryMembers.length][];
+        // The compiler and fromImage both reject unknown references and cycles, so the order is complete
+        int[][] nested = nestCategories(categoryNames, categoryMembers);
+        int[] order = new int[categoryNames.length];
+        sortCategories(nested, order);
+        // Nested categories come first in the order, so each is flattened once, from their items
+        for (int category : order) {
+            Set<String> flattened = new LinkedHashSet<>();
+            for (int j = 0; j < categoryMembers[category].length; j++) {
+                if (nested[category][j] == NONE) {
+                    flattened.add(categoryMembers[category][j]);
+                } else {
+                    Collections.addAll(flattened, this.categoryItems[nested[category][j]]);
+                }
+            }
+            this.categoryItems[category] = flattened.toArray(new String[0]);
+        }
+        this.conditions = conditions;
+        this.settings = Map.copyOf(settings);
+        this.triggers = Map.copyOf(triggers);
+        this.triggerPcs = new int[Trigger.count()];
+        for (int i = 0; i < this.triggerPcs.length; i++) {
+            this.triggerPcs[i] = triggers.getOrDefault(Trigger.fromIndex(i).getName(), -1);
+        }
+        this.loopSlots = loopSlots;
+    }
+
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    // --- Instructions ---
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public int getInstructionCount() {
+        return code.length / INSN_WIDTH;
+    }
+
+    public Opcode getOpcode(int pc) {
+        return Opcode.fromIndex(code[pc * INSN_WIDTH]);
+    }
+
+    public int getOperand(int pc, int operand) {
+        return code[pc * INSN_WIDTH + 1 + operand];
+    }
+
+    public int getLine(int pc) {
+        return lines[pc];
+    }
+
+    public int getLoopSlots() {
+        return loopSlots;
+    }
+
+    // --- Items & Categories ---
+
+    public String getItem(int index) {
+        return items[index];
+    }
+
+    public int getItemCount() {
+        return items.length;
+    }
+
+    public int getCategoryCount() {
+        return categoryNames.length;
+    }
+
+    public String getCategoryName(int index) {
+        return categoryNames[index];
+    }
+
+    /**
+     * Raw category members: item IDs and nested {@code category:} references.
+     */
+    public String[] getCategoryMembers(int index) {
+        return categoryMembers[index];
+    }
+
+    /**
+     * Every item ID in a category with nested categories expanded, without duplicates.
+     */
+    public String[] getCategoryItems(int index) {
+        return categoryItems[index];
+    }
+
+    /**
+     * For each category, the category each member names, or {@link #NONE} for items.
+     *
+     * @return null if a member names a category that does not exist
+     */
+    @Nullable
+    static int[][] nestCategories(String[] names, String[][] members) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            index.putIfAbsent(names[i], i);
+        }
+        int[][] nested = new int[members.length][];
+        for (int i = 0; i < members.length; i++) {
+            nested[i] = new int[members[i].length];
+            for (int j = 0; j < members[i].length; j++) {
+                String member = members[i][j];
+                if (!member.startsWith("category:")) {
+                    nested[i][j] = NONE;
+                    continue;
+                }
+                Integer target = index.get(member.substring("category:".length()));
+                if (target == null) {
+                    return null;
+                }
+                nested[i][j] = target;
+            }
+        }
+        return nested;
+    }
+
+    /**
+     * Fills {@code order} with every category after all the categories nested in it. Depth-first,
+     * but iterative, so a long chain of categories cannot overflow the stack.
+     *
+     * @return {@link #NONE}, or a category that contains itself, in which case {@code order} is
+     * incomplete
+     */
+    static int sortCategories(int[][] nested, int[] order) {
+        int count = nested.length;
+        // 1 = on the current path, 2 = done
+        byte[] marks = new byte[count];
+        int[] stack = new int[count];
+        int[] next = new int[count];
+        int sorted = 0;
+        for (int root = 0; root < count; root++) {
+            if (marks[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            stack[0] = root;
+            next[0] = 0;
+            marks[root] = 1;
+            while (depth >= 0) {
+                int category = stack[depth];
+                if (next[depth] == nested[category].length) {
+                    marks[category] = 2;
+                    order[sorted++] = category;
+                    depth--;
+                    continue;
+                }
+                int child = nested[category][next[depth]++];
+                if (child == NONE || marks[child] == 2) {
+                    continue;
+                }
+                if (marks[child] == 1) {
+                    return child;
+                }
+                marks[child] = 1;
+                depth++;
+                stack[depth] = child;
+                next[depth] = 0;
+            }
+        }
+        return NONE;
+    }
+
+    public static int itemFilter(int itemIndex) {
+        return itemIndex << 1;
+    }
+
+    public static int categoryFilter(int categoryIndex) {
+        return (categoryIndex << 1) | 1;
+    }
+
+    public static boolean isCategoryFilter(int filter) {
+        return (filter & 1) != 0;
+    }
+
+    public static int filterIndex(int filter) {
+        return filter >> 1;
+    }
+
+    // --- Waypoints & Routes ---
+
+    public int getWaypointCount() {
+        return waypointNames.length;
+    }
+
+    public String getWaypointName(int index) {
+        return waypointNames[index];
+    }
+
+    public int getWaypointCoord(int index, int axis) {
+        return waypointCoords[index * 3 + axis];
+    }
+
+    /**
+     * Whether the given axis (0 = x, 1 = y, 2 = z) is relative to the controller ({@code ~}).
+     */
+    public boolean isWaypointRelative(int index, int axis) {
+        return (waypointRelative[index] & (1 << axis)) != 0;
+    }
+
+    public int getRouteCount() {
+        return routes.length;
+    }
+
+    public String getRouteName(int index) {
+        return routeNames[index];
+    }
+
+    public int[] getRoute(int index) {
+        return routes[index];
+    }
+
+    // --- Conditions, Settings & Triggers ---
+
+    public Condition getCondition(int index) {
+        return conditions[index];
+    }
+
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+
+    public String getSetting(String key, String fallback) {
+        return settings.getOrDefault(key, fallback);
+    }
+
+    public Map<String, Integer> getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * Entry point of the handler for {@code trigger}, or -1 if the program has none.
+     */
+    public int getTriggerPc(Trigger trigger) {
+        return triggerPcs[trigger.ordinal()];
+    }
+
+    public boolean handles(Trigger trigger) {
+        return triggerPcs[trigger.ordinal()] >= 0;
+    }
+
+    // --- Binary Image ---
+
+    /**
+     * Serializes this program into a self-contained binary image, prefixed with
+     * {@link #IMAGE_VERSION}.
+     */
+    public byte[] toImage() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.length * 4 + 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(IMAGE_VERSION);
+            out.writeLong(sourceHash);
+            writeInts(out, code);
+            writeInts(out, lines);
+            writeStrings(out, items);
+            writeStrings(out, waypointNames);
+            writeInts(out, waypointCoords);
+            out.writeInt(waypointRelative.length);
+            out.write(waypointRelative);
+            writeStrings(out, routeNames);
+            out.writeInt(routes.length);
+            for (int[] route : routes) {
+                writeInts(out, route);
+            }
+            writeStrings(out, categoryNames);
+            out.writeInt(categoryMembers.length);
+            for (String[] members : categoryMembers) {
+                writeStrings(out, members);
+            }
+            out.writeInt(conditions.length);
+            for (Condition condition : conditions) {
+                out.writeByte(condition.kind().ordinal());
+                out.writeInt(condition.arg());
+                out.writeInt(condition.amount());
+                out.writeBoolean(condition.negated());
+            }
+            out.writeInt(settings.size());
+            for (Map.Entry<String, String> entry : settings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(triggers.size());
+            for (Map.Entry<String, Integer> entry : triggers.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(loopSlots);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads an image written by {@link #toImage()}.
+     *
+     * @throws IOException if the image is truncated, corrupt or from another {@link #IMAGE_VERSION}
+     */
+    public static CompiledProgram fromImage(byte[] image) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(image))) {
+            int version = in.readInt();
+            if (version != IMAGE_VERSION) {
+                throw new IOException("Unsupported program image version " + version);
+            }
+            long sourceHash = in.readLong();
+            int[] code = readInts(in);
+            int[] lines = readInts(in);
+            if (code.length % INSN_WIDTH != 0 || lines.length != code.length / INSN_WIDTH) {
+                throw new IOException("Malformed program image");
+            }
+            for (int i = 0; i < code.length; i += INSN_WIDTH) {
+                if (code[i] < 0 || code[i] >= Opcode.values().length) {
+                    throw new IOException("Unknown opcode " + code[i]);
+                }
+            }
+            String[] items = readStrings(in);
+            String[] waypointNames = readStrings(in);
+            int[] waypointCoords = readInts(in);
+            byte[] waypointRelative = new byte[readLength(in)];
+            in.readFully(waypointRelative);
+            String[] routeNames = readStrings(in);
+            int[][] routes = new int[readLength(in)][];
+            for (int i = 0; i < routes.length; i++) {
+                routes[i] = readInts(in);
+            }
+            String[] categoryNames = readStrings(in);
+            String[][] categoryMembers = new String[readLength(in)][];
+            for (int i = 0; i < categoryMembers.length; i++) {
+                categoryMembers[i] = readStrings(in);
+            }
+            Condition.Kind[] kinds = Condition.Kind.values();
+            Condition[] conditions = new Condition[readLength(in)];
+            for (int i = 0; i < conditions.length; i++) {
+                int kind = in.readUnsignedByte();
+                if (kind >= kinds.length) {
+                    throw new IOException("Unknown condition kind " + kind);
+                }
+                conditions[i] = new Condition(kinds[kind], in.readInt(), in.readInt(), in.readBoolean());
+            }
+            Map<String, String> settings = new LinkedHashMap<>();
+            for (int i = readLength(in); i > 0; i--) {
+                settings.put(in.readUTF(), in.readUTF());
+            }
+            Map<String, Integer> triggers = new LinkedHashMap<>();
+            for (int i = readLength(in); i > 0; i--) {
+                triggers.put(in.readUTF(), in.readInt());
+            }
+            int loopSlots = in.readInt();
+            if (waypointCoords.length != waypointNames.length * 3 || waypointRelative.length != waypointNames.length
+                    || routeNames.length != routes.length || categoryNames.length != categoryMembers.length
+                    || loopSlots < 0 || loopSlots > lines.length) {
+                throw new IOException("Malformed program image");
+            }
+            verify(code, items.length, waypointNames.length, routes, categoryNames, categoryMembers, conditions,
+                    triggers, loopSlots);
+            return new CompiledProgram(sourceHash, code, lines, items, waypointNames, waypointCoords, waypointRelative,
+                    routeNames, routes, categoryNames, categoryMembers, conditions, settings, triggers, loopSlots);
+        }
+    }
+
+    // --- Image Verification ---
+
+    /**
+     * Checks everything the VM and the automaton look up by index, so an image that did not come
+     * from the compiler cannot make them read out of bounds or loop forever. Images travel on
+     * books, whose components players in creative mode can set to anything.
+     */
+    private static void verify(int[] code, int itemCount, int waypointCount, int[][] routes,
+                               String[] categoryNames, String[][] categoryMembers, Condition[] conditions,
+                               Map<String, Integer> triggers, int loopSlots) throws IOException {
+        int count = code.length / INSN_WIDTH;
+        if (count == 0) {
+            throw new IOException("Empty program image");
+        }
+        // Execution only ever leaves the last instruction by jumping, returning or halting
+        Opcode last = Opcode.fromIndex(code[(count - 1) * INSN_WIDTH]);
+        if (last != Opcode.JUMP && last != Opcode.RETURN && last != Opcode.HALT) {
+            throw new IOException("Program image runs off its end");
+        }
+        // The FOR_BEGIN that last set each loop slot, for the GOTOs reading its cursor
+        int[] forLoops = new int[loopSlots];
+        Arrays.fill(forLoops, NONE);
+        for (int pc = 0; pc < count; pc++) {
+            int base = pc * INSN_WIDTH;
+            int a = code[base + 1];
+            int b = code[base + 2];
+            int c = code[base + 3];
+            Opcode op = Opcode.fromIndex(code[base]);
+            if ((op == Opcode.REPEAT_BEGIN || op == Opcode.FOR_BEGIN) && inRange(b, loopSlots)) {
+                forLoops[b] = op == Opcode.FOR_BEGIN ? pc : NONE;
+            }
+            boolean valid = switch (op) {
+                case NOP, HALT, ATOMIC_BEGIN, ATOMIC_END, RETURN, SLEEP, WAKE, FISH -> true;
+                case JUMP -> inRange(a, count);
+                case JUMP_IF_NOT -> inRange(a, conditions.length) && inRange(b, count);
+                case REPEAT_BEGIN -> inRange(b, loopSlots) && inRange(c, count);
+                case REPEAT_NEXT -> inRange(a, count) && inRange(b, loopSlots);
+                case FOR_BEGIN -> inRange(a, routes.length) && inRange(b, loopSlots) && inRange(c, count);
+                case FOR_NEXT -> inRange(a, count) && inRange(b, loopSlots) && inRange(c, routes.length);
+                case WAIT -> a >= 0;
+                case GOTO -> a == CURSOR ? isCursor(code, forLoops, pc, b, c, routes.length) : isWaypoint(a, waypointCount);
+                case PATROL -> inRange(a, routes.length);
+                case HARVEST, MINE, FEED -> inRange(a, itemCount);
+                case CHOP -> a == NONE || inRange(a, itemCount);
+                case STORE -> isFilter(a, itemCount, categoryNames.length);
+                case STORE_ALL -> a == NONE || isFilter(a, itemCount, categoryNames.length);
+                case RETRIEVE -> isFilter(a, itemCount, categoryNames.length)
+                        && (b == NONE || isWaypoint(b, waypointCount)) && c >= 0;
+                case CRAFT -> inRange(a, itemCount) && b >= 0;
+                case EQUIP -> inRange(a, itemCount) && inRange(b, ProgramCompiler.EQUIP_SLOTS.size());
+            };
+            if (!valid) {
+                throw new IOException("Malformed instruction at " + pc);
+            }
+        }
+        for (int[] route : routes) {
+            for (int point : route) {
+                if (!isWaypoint(point, waypointCount)) {
+                    throw new IOException("Malformed route");
+                }
+            }
+        }
+        for (Condition condition : conditions) {
+            if (condition.kind() == Condition.Kind.HAS && !isFilter(condition.arg(), itemCount, categoryNames.length)) {
+                throw new IOException("Malformed condition");
+            }
+        }
+        for (int pc : triggers.values()) {
+            if (!inRange(pc, count)) {
+                throw new IOException("Malformed trigger entry point");
+            }
+        }
+        verifyCategories(categoryNames, categoryMembers);
+    }
+
+    /**
+     * Every nested category reference resolves, and no category contains itself; the constructor
+     * relies on both to flatten them.
+     */
+    private static void verifyCategories(String[] names, String[][] members) throws IOException {
+        Set<String> seen = new HashSet<>();
+        for (String name : names) {
+            if (!seen.add(name)) {
+                throw new IOException("Duplicate category in program image");
+            }
+        }
+        int[][] nested = nestCategories(names, members);
+        if (nested == null) {
+            throw new IOException("Unknown category in program image");
+        }
+        if (sortCategories(nested, new int[names.length]) != NONE) {
+            throw new IOException("Category cycle in program image");
+        }
+    }
+
+    private static boolean inRange(int index, int length) {
+        return index >= 0 && index < length;
+    }
+
+    /**
+     * Whether a GOTO at {@code pc} reading the cursor of {@code slot} over {@code route} sits in the
+     * body of the FOR over that route which last set the slot.
+     */
+    private static boolean isCursor(int[] code, int[] forLoops, int pc, int route, int slot, int routeCount) {
+        if (!inRange(route, routeCount) || !inRange(slot, forLoops.length) || forLoops[slot] == NONE) {
+            return false;
+        }
+        int base = forLoops[slot] * INSN_WIDTH;
+        return code[base + 1] == route && code[base + 3] > pc;
+    }
+
+    private static boolean isWaypoint(int index, int waypointCount) {
+        return index == HOME || inRange(index, waypointCount);
+    }
+
+    private static boolean isFilter(int filter, int itemCount, int categoryCount) {
+        return filter >= 0 && inRange(filterIndex(filter), isCategoryFilter(filter) ? categoryCount : itemCount);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[readLength(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[readLength(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        // Every element takes at least one byte, so anything longer than what is left is corrupt
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Malformed program image");
+        }
+        return length;
+    }
+}
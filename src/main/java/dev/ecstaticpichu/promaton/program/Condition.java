@@ -0,0 +1,16 @@
+package dev.ecstaticpichu.promaton.program;
+
+/**
+ * A compiled {@code IF} condition. {@code arg} is an item filter reference for {@link Kind#HAS}
+ * and a plain number for the other kinds.
+ */
+public record Condition(Kind kind, int arg, int amount, boolean negated) {
+
+    public enum Kind {
+        HAS,
+        INVENTORY_FULL,
+        HEALTH_BELOW,
+        TIME_BEFORE,
+        REDSTONE
+    }
+}
@@ -0,0 +1,12 @@
+package dev.ecstaticpichu.promaton.program;
+
+/**
+ * A problem found in a Program book, pointing at the line and column (both 1-based) it starts at.
+ */
+public record Diagnostic(int line, int column, String message) {
+
+    @Override
+    public String toString() {
+        return "line " + line + ":" + column + ": " + message;
+    }
+}
@@ -0,0 +1,58 @@
+package dev.ecstaticpichu.promaton.program;
+
+public enum Opcode {
+    NOP(false, false),
+    HALT(false, false),
+    JUMP(false, false),
+    JUMP_IF_NOT(false, false),
+    REPEAT_BEGIN(false, false),
+    REPEAT_NEXT(false, false),
+    FOR_BEGIN(false, false),
+    FOR_NEXT(false, false),
+    ATOMIC_BEGIN(false, false),
+    ATOMIC_END(false, false),
+    RETURN(false, false),
+    WAIT(false, false),
+    SLEEP(false, false),
+    WAKE(false, false),
+    GOTO(true, false),
+    PATROL(true, true),
+    HARVEST(true, true),
+    MINE(true, true),
+    CHOP(true, true),
+    FEED(true, true),
+    FISH(true, true),
+    STORE(true, false),
+    STORE_ALL(true, false),
+    RETRIEVE(true, false),
+    CRAFT(true, false),
+    EQUIP(true, false);
+
+    private static final Opcode[] VALUES = values();
+
+    private final boolean action;
+    private final boolean hasUntil;
+
+    Opcode(boolean action, boolean hasUntil) {
+        this.action = action;
+        this.hasUntil = hasUntil;
+    }
+
+    /**
+     * Actions are handed to the automaton as tasks; everything else is executed by the VM itself.
+     */
+    public boolean isAction() {
+        return action;
+    }
+
+    /**
+     * Whether operand {@code c} holds an {@code until:} time of day that bounds the action.
+     */
+    public boolean hasUntil() {
+        return hasUntil;
+    }
+
+    public static Opcode fromIndex(int index) {
+        return VALUES[index];
+    }
+}
@@ -0,0 +1,113 @@
+package dev.ecstaticpichu.promaton.program;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Interns compiled programs by source text, so every table holding a copy of the same book shares
+ * one immutable {@link CompiledProgram}. Entries are weak: an image is dropped once no table or
+ * automaton uses it anymore.
+ *
+ * <p>An image restored from a book could have been made by hand for the book's text, so restored
+ * programs are kept apart from compiled ones and only shared with books carrying the very same
+ * image. Copies of an honest book all carry the compiler's output, so they still share one.
+ */
+public final class ProgramCache {
+
+    private static final Map<Long, Entry> entries = new HashMap<>();
+    private static final Map<Long, Entry> restored = new HashMap<>();
+    private static final ReferenceQueue<CompiledProgram> cleared = new ReferenceQueue<>();
+
+    private static final class Entry extends WeakReference<CompiledProgram> {
+        private final long hash;
+        // Kept to rule out hash collisions; far smaller than the image it guards
+        private final String source;
+        // The image a restored program was read from, or null for a compiled one
+        @Nullable
+        private final byte[] image;
+
+        private Entry(CompiledProgram program, String source, @Nullable byte[] image, ReferenceQueue<CompiledProgram> queue) {
+            super(program, queue);
+            this.hash = program.getSourceHash();
+            this.source = source;
+            this.image = image;
+        }
+
+        @Nullable
+        private CompiledProgram get(String source, @Nullable byte[] image) {
+            return this.source.equals(source) && (this.image == null || Arrays.equals(this.image, image)) ? this.get() : null;
+        }
+    }
+
+    private ProgramCache() {
+    }
+
+    /**
+     * The shared compiled form of {@code source}, compiling it only if no live copy exists. On a
+     * miss {@code image}, a stored {@link CompiledProgram#toImage() binary image} of the same
+     * source, is tried first; images that fail to load or belong to other text are ignored. Fresh
+     * compiles are validated against {@code knownId}.
+     */
+    public static synchronized CompiledProgram compile(String source, @Nullable byte[] image,
+                                                       Predicate<String> knownId) throws ProgramCompileException {
+        expunge();
+        long hash = ProgramCompiler.hashSource(source);
+        Entry entry = entries.get(hash);
+        CompiledProgram program = entry == null ? null : entry.get(source, null);
+        if (program != null) {
+            return program;
+        }
+        if (image != null) {
+            entry = restored.get(hash);
+            program = entry == null ? null : entry.get(source, image);
+            if (program != null) {
+                return program;
+            }
+            program = restore(image, hash);
+            if (program != null) {
+                restored.put(hash, new Entry(program, source, image.clone(), cleared));
+                return program;
+            }
+        }
+        program = ProgramCompiler.compile(source, knownId);
+        entries.put(hash, new Entry(program, source, null, cleared));
+        return program;
+    }
+
+    @Nullable
+    private static CompiledProgram restore(byte[] image, long hash) {
+        try {
+            CompiledProgram program = CompiledProgram.fromImage(image);
+            return program.getSourceHash() == hash ? program : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The number of distinct programs held, counting ones just dropped until the next lookup.
+     */
+    public static synchronized int size() {
+        expunge();
+        return entries.size() + restored.size();
+    }
+
+    private static void expunge() {
+        Object reference;
+        while ((reference = cleared.poll()) != null) {
+            Entry entry = (Entry) reference;
+            Map<Long, Entry> map = entry.image == null ? entries : restored;
+            // A colliding source may have replaced the entry since
+            if (map.get(entry.hash) == entry) {
+                map.remove(entry.hash);
+            }
+        }
+    }
+}
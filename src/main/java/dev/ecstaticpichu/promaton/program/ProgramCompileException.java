@@ -0,0 +1,44 @@
+package dev.ecstaticpichu.promaton.program;
+
+import java.util.List;
+
+public class ProgramCompileException extends Exception {
+
+    private final int line;
+    private final int column;
+    private final List<Diagnostic> diagnostics;
+
+    public ProgramCompileException(int line, int column, String message) {
+        super(message);
+        this.line = line;
+        this.column = column;
+        this.diagnostics = List.of(new Diagnostic(line, column, message));
+    }
+
+    /**
+     * One exception for everything the validation pass found; the first diagnostic is the headline.
+     */
+    public ProgramCompileException(List<Diagnostic> diagnostics) {
+        super(diagnostics.get(0).message());
+        this.line = diagnostics.get(0).line();
+        this.column = diagnostics.get(0).column();
+        this.diagnostics = List.copyOf(diagnostics);
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    @Override
+    public String toString() {
+        return "line " + line + ":" + column + ": " + getMessage();
+    }
+}
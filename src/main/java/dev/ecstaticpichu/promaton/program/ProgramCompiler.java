@@ -0,0 +1,780 @@
+package dev.ecstaticpichu.promaton.program;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Turns Program book text into a {@link CompiledProgram}. Sections are read first so that
+ * waypoints, routes and categories may be declared in any order relative to the commands.
+ */
+public final class ProgramCompiler {
+
+    public static final int DAY_LENGTH = 24000;
+
+    private static final Set<String> ARG_KEYS = Set.of("until", "except", "from", "amount", "slot", "time");
+    static final List<String> EQUIP_SLOTS = List.of("main", "off", "head", "chest", "legs", "feet");
+
+    record Token(String text, int column) {
+    }
+
+    record SourceLine(int number, List<Token> tokens) {
+        Token head() {
+            return tokens.get(0);
+        }
+    }
+
+    private static final class OpenBlock {
+        final String kind;
+        final SourceLine line;
+        int start;
+        int slot = CompiledProgram.NONE;
+        int patch = CompiledProgram.NONE;
+        int elsePatch = CompiledProgram.NONE;
+        int route = CompiledProgram.NONE;
+
+        OpenBlock(String kind, SourceLine line) {
+            this.kind = kind;
+            this.line = line;
+        }
+    }
+
+    private final String source;
+    private final Predicate<String> knownId;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private boolean spinReported = false;
+
+    // Sections
+    private final List<SourceLine> waypointLines = new ArrayList<>();
+    private final List<SourceLine> itemLines = new ArrayList<>();
+    private final List<SourceLine> settingLines = new ArrayList<>();
+    private final List<SourceLine> mainLines = new ArrayList<>();
+    private final Map<String, List<SourceLine>> triggerLines = new LinkedHashMap<>();
+
+    // Tables
+    private final List<String> items = new ArrayList<>();
+    private final Map<String, Integer> itemIndex = new HashMap<>();
+    private final List<String> waypointNames = new ArrayList<>();
+    private final Map<String, Integer> waypointIndex = new HashMap<>();
+    private int[] waypointCoords = new int[24];
+    private byte[] waypointRelative = new byte[8];
+    private final List<String> routeNames = new ArrayList<>();
+    private final Map<String, Integer> routeIndex = new HashMap<>();
+    private final List<int[]> routes = new ArrayList<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryIndex = new HashMap<>();
+    private final List<String[]> categoryMembers = new ArrayList<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private final Map<String, String> settings = new LinkedHashMap<>();
+    private final Map<String, Integer> triggers = new LinkedHashMap<>();
+
+    // Code
+    private int[] code = new int[64 * CompiledProgram.INSN_WIDTH];
+    private int[] lines = new int[64];
+    private int size = 0;
+    private final Deque<OpenBlock> blocks = new ArrayDeque<>();
+    private int openLoops = 0;
+    private int loopSlots = 0;
+
+    private ProgramCompiler(String source, Predicate<String> knownId) {
+        this.source = source;
+        this.knownId = knownId;
+    }
+
+    /**
+     * Compiles and validates {@code source}. Structural errors stop at the first one; the
+     * validation pass (item IDs not accepted by {@code knownId}, loops that can never yield)
+     * reports everything it finds in a single exception.
+     */
+    public static CompiledProgram compile(String source, Predicate<String> knownId) throws ProgramCompileException {
+        ProgramCompiler compiler = new ProgramCompiler(source, knownId);
+        CompiledProgram program;
+        try {
+            program = compiler.run();
+        } catch (ProgramCompileException e) {
+            if (compiler.diagnostics.isEmpty()) {
+                throw e;
+            }
+            // Report what validation found before the structural error as well
+            List<Diagnostic> all = new ArrayList<>(compiler.diagnostics);
+            all.addAll(e.getDiagnostics());
+            all.sort(Comparator.comparingInt(Diagnostic::line).thenComparingInt(Diagnostic::column));
+            throw new ProgramCompileException(all);
+        }
+        if (!compiler.diagnostics.isEmpty()) {
+            throw new ProgramCompileException(compiler.diagnostics);
+        }
+        return program;
+    }
+
+    /**
+     * 64-bit FNV-1a over the source characters; used to recognise unchanged books.
+     */
+    public static long hashSource(String source) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            hash ^= source.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private CompiledProgram run() throws ProgramCompileException {
+        splitSections();
+        for (SourceLine line : waypointLines) {
+            if (!line.head().text().startsWith("route:")) {
+                defineWaypoint(line);
+            }
+        }
+        for (SourceLine line : waypointLines) {
+            if (line.head().text().startsWith("route:")) {
+                defineRoute(line);
+            }
+        }
+        for (SourceLine line : itemLines) {
+            defineCategory(line);
+        }
+        checkCategories();
+        for (SourceLine line : settingLines) {
+            StringBuilder value = new StringBuilder();
+            for (int i = 1; i < line.tokens().size(); i++) {
+                if (i > 1) value.append(' ');
+                value.append(line.tokens().get(i).text());
+            }
+            settings.put(line.head().text().toLowerCase(), value.toString());
+        }
+
+        if (mainLines.isEmpty()) {
+            emit(Opcode.HALT, 0, 0, 0, 0);
+        } else {
+            compileCommands(mainLines);
+            if (!spinReported && !yields(0, size)) {
+                warn(mainLines.get(0).head(), mainLines.get(0),
+                        "[COMMANDS] starts over forever without waiting or doing anything; add a WAIT");
+            }
+            emit(Opcode.JUMP, 0, 0, 0, mainLines.get(mainLines.size() - 1).number());
+        }
+        for (Map.Entry<String, List<SourceLine>> entry : triggerLines.entrySet()) {
+            triggers.put(entry.getKey(), size);
+            compileCommands(entry.getValue());
+            int lastLine = entry.getValue().isEmpty() ? 0 : entry.getValue().get(entry.getValue().size() - 1).number();
+            emit(Opcode.RETURN, 0, 0, 0, lastLine);
+        }
+
+        int waypointCount = waypointNames.size();
+        return new CompiledProgram(
+                hashSource(source),
+                Arrays.copyOf(code, size * CompiledProgram.INSN_WIDTH),
+                Arrays.copyOf(lines, size),
+                items.toArray(new String[0]),
+                waypointNames.toArray(new String[0]),
+                Arrays.copyOf(waypointCoords, waypointCount * 3),
+                Arrays.copyOf(waypointRelative, waypointCount),
+                routeNames.toArray(new String[0]),
+                routes.toArray(new int[0][]),
+                categoryNames.toArray(new String[0]),
+                categoryMembers.toArray(new String[0][]),
+                conditions.toArray(new Condition[0]),
+                settings,
+                triggers,
+                loopSlots
+        );
+    }
+
+    // --- Sections ---
+
+    private void splitSections() throws ProgramCompileException {
+        List<SourceLine> current = null;
+        String[] rawLines = source.split("\r?\n", -1);
+        for (int i = 0; i < rawLines.length; i++) {
+            SourceLine line = tokenize(i + 1, rawLines[i]);
+            if (line.tokens().isEmpty()) {
+                continue;
+            }
+            String head = line.head().text();
+            if (head.startsWith("[")) {
+                current = openSection(line);
+            } else if (current == null) {
+                throw error(line.head(), line, "Expected a section header such as [COMMANDS]");
+            } else {
+                current.add(line);
+            }
+        }
+    }
+
+    private List<SourceLine> openSection(SourceLine line) throws ProgramCompileException {
+        StringBuilder header = new StringBuilder();
+        for (Token token : line.tokens()) {
+            if (!header.isEmpty()) header.append(' ');
+            header.append(token.text());
+        }
+        String text = header.toString();
+        if (!text.endsWith("]")) {
+            throw error(line.head(), line, "Unterminated section header");
+        }
+        String name = text.substring(1, text.length() - 1).trim();
+        switch (name.toUpperCase()) {
+            case "WAYPOINTS":
+                return waypointLines;
+            case "ITEMS":
+                return itemLines;
+            case "SETTINGS":
+                return settingLines;
+            case "COMMANDS":
+                return mainLines;
+            default:
+                if (name.toUpperCase().startsWith("COMMANDS TRIGGER:")) {
+                    String trigger = name.substring("COMMANDS trigger:".length()).trim().toLowerCase();
+                    if (trigger.isEmpty()) {
+                        throw error(line.head(), line, "Missing trigger name");
+                    }
+                    if (Trigger.fromName(trigger) == null) {
+                        throw error(line.head(), line, "Unknown trigger '" + trigger + "'");
+                    }
+                    return triggerLines.computeIfAbsent(trigger, key -> new ArrayList<>());
+                }
+                throw error(line.head(), line, "Unknown section [" + name + "]");
+        }
+    }
+
+    static SourceLine tokenize(int number, String raw) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = raw.length();
+        while (i < length) {
+            char ch = raw.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                i++;
+                continue;
+            }
+            if (ch == '#') {
+                break;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(raw.charAt(i))) {
+                i++;
+            }
+            tokens.add(new Token(raw.substring(start, i), start + 1));
+        }
+        return new SourceLine(number, tokens);
+    }
+
+    // --- Waypoints ---
+
+    private void defineWaypoint(SourceLine line) throws ProgramCompileException {
+        List<Token> tokens = line.tokens();
+        String name = tokens.get(0).text();
+        if (name.equals("home")) {
+            throw error(tokens.get(0), line, "'home' is reserved for the Automaton Table");
+        }
+        if (waypointIndex.containsKey(name)) {
+            throw error(tokens.get(0), line, "Duplicate waypoint '" + name + "'");
+        }
+        if (tokens.size() != 4) {
+            throw error(tokens.get(0), line, "Waypoint needs a name and three coordinates");
+        }
+        int index = addWaypoint(name, line, tokens.get(1), tokens.get(2), tokens.get(3));
+        waypointIndex.put(name, index);
+    }
+
+    private int addWaypoint(String name, SourceLine line, Token x, Token y, Token z) throws ProgramCompileException {
+        int index = waypointNames.size();
+        if ((index + 1) * 3 > waypointCoords.length) {
+            waypointCoords = Arrays.copyOf(waypointCoords, waypointCoords.length * 2);
+            waypointRelative = Arrays.copyOf(waypointRelative, waypointRelative.length * 2);
+        }
+        Token[] axes = {x, y, z};
+        byte relative = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            String text = axes[axis].text();
+            if (text.startsWith("~")) {
+                relative |= (byte) (1 << axis);
+                text = text.substring(1);
+                if (text.isEmpty()) {
+                    text = "0";
+                }
+            }
+            waypointCoords[index * 3 + axis] = parseInt(axes[axis], line, text);
+        }
+        waypointRelative[index] = relative;
+        waypointNames.add(name);
+        return index;
+    }
+
+    private void defineRoute(SourceLine line) throws ProgramCompileException {
+        List<Token> tokens = line.tokens();
+        String name = tokens.get(0).text().substring("route:".length());
+        if (name.isEmpty()) {
+            throw error(tokens.get(0), line, "Missing route name");
+        }
+        if (routeIndex.containsKey(name)) {
+            throw error(tokens.get(0), line, "Duplicate route '" + name + "'");
+        }
+        List<Integer> points = new ArrayList<>();
+        List<Token> group = new ArrayList<>();
+        for (int i = 1; i <= tokens.size(); i++) {
+            if (i == tokens.size() || tokens.get(i).text().equals(">")) {
+                points.add(routePoint(name, line, group, points.size()));
+                group.clear();
+            } else {
+                group.add(tokens.get(i));
+            }
+        }
+        routeIndex.put(name, routes.size());
+        routeNames.add(name);
+        routes.add(points.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private int routePoint(String route, SourceLine line, List<Token> group, int position) throws ProgramCompileException {
+        if (group.size() == 1) {
+            return resolveWaypoint(group.get(0), line);
+        }
+        if (group.size() == 3) {
+            return addWaypoint(route + "#" + position, line, group.get(0), group.get(1), group.get(2));
+        }
+        Token at = group.isEmpty() ? line.head() : group.get(0);
+        throw error(at, line, "Route points must be a waypoint name or three coordinates");
+    }
+
+    private int resolveWaypoint(Token token, SourceLine line) throws ProgramCompileException {
+        String name = token.text();
+        if (name.equals("home")) {
+            return CompiledProgram.HOME;
+        }
+        Integer index = waypointIndex.get(name);
+        if (index == null) {
+            throw error(token, line, "Unknown waypoint '" + name + "'");
+        }
+        return index;
+    }
+
+    private int resolveRoute(Token token, SourceLine line) throws ProgramCompileException {
+        String text = token.text();
+        if (!text.startsWith("route:")) {
+            throw error(token, line, "Expected route:<name>");
+        }
+        Integer index = routeIndex.get(text.substring("route:".length()));
+        if (index == null) {
+            throw error(token, line, "Unknown route '" + text + "'");
+        }
+        return index;
+    }
+
+    // --- Items ---
+
+    private void defineCategory(SourceLine line) throws ProgramCompileException {
+        List<Token> tokens = line.tokens();
+        String head = tokens.get(0).text();
+        if (!head.startsWith("category:") || head.length() == "category:".length()) {
+            throw error(tokens.get(0), line, "Expected category:<name>");
+        }
+        String name = head.substring("category:".length());
+        if (categoryIndex.containsKey(name)) {
+            throw error(tokens.get(0), line, "Duplicate category '" + name + "'");
+        }
+        String[] members = new String[tokens.size() - 1];
+        for (int i = 1; i < tokens.size(); i++) {
+            String member = tokens.get(i).text();
+            if (member.startsWith("category:")) {
+                members[i - 1] = member;
+            } else {
+                members[i - 1] = normalizeId(member);
+                checkId(tokens.get(i), line, members[i - 1]);
+            }
+        }
+        categoryIndex.put(name, categoryNames.size());
+        categoryNames.add(name);
+        categoryMembers.add(members);
+    }
+
+    private void checkCategories() throws ProgramCompileException {
+        for (SourceLine line : itemLines) {
+            for (int i = 1; i < line.tokens().size(); i++) {
+                Token token = line.tokens().get(i);
+                if (token.text().startsWith("category:")
+                        && !categoryIndex.containsKey(token.text().substring("category:".length()))) {
+                    throw error(token, line, "Unknown category '" + token.text() + "'");
+                }
+            }
+        }
+        // Nested categories are flattened when the program is built, which needs them free of cycles
+        String[] names = categoryNames.toArray(new String[0]);
+        int cycle = CompiledProgram.sortCategories(
+                CompiledProgram.nestCategories(names, categoryMembers.toArray(new String[0][])), new int[names.length]);
+        if (cycle != CompiledProgram.NONE) {
+            SourceLine line = itemLines.get(cycle);
+            throw error(line.head(), line, "Category '" + categoryNames.get(cycle) + "' contains itself");
+        }
+    }
+
+    private int item(Token token, SourceLine line) {
+        String normalized = normalizeId(token.text());
+        checkId(token, line, normalized);
+        Integer index = itemIndex.get(normalized);
+        if (index == null) {
+            index = items.size();
+            items.add(normalized);
+            itemIndex.put(normalized, index);
+        }
+        return index;
+    }
+
+    private int filter(Token token, SourceLine line) throws ProgramCompileException {
+        String text = token.text();
+        if (text.startsWith("category:")) {
+            Integer index = categoryIndex.get(text.substring("category:".length()));
+            if (index == null) {
+                throw error(token, line, "Unknown category '" + text + "'");
+            }
+            return CompiledProgram.categoryFilter(index);
+        }
+        return CompiledProgram.itemFilter(item(token, line));
+    }
+
+    private static String normalizeId(String id) {
+        return id.indexOf(':') < 0 ? "minecraft:" + id : id;
+    }
+
+    // --- Commands ---
+
+    private void compileCommands(List<SourceLine> commandLines) throws ProgramCompileException {
+        int depth = blocks.size();
+        for (SourceLine line : commandLines) {
+            compileCommand(line);
+        }
+        if (blocks.size() > depth) {
+            OpenBlock open = blocks.peek();
+            throw error(open.line.head(), open.line, open.kind + " is missing its END");
+        }
+    }
+
+    private void compileCommand(SourceLine line) throws ProgramCompileException {
+        Token head = line.head();
+        String command = head.text().toUpperCase();
+        Map<String, Token> args = new HashMap<>();
+        List<Token> positional = new ArrayList<>();
+        for (int i = 1; i < line.tokens().size(); i++) {
+            Token token = line.tokens().get(i);
+            int colon = token.text().indexOf(':');
+            if (colon > 0 && ARG_KEYS.contains(token.text().substring(0, colon))) {
+                args.put(token.text().substring(0, colon),
+                        new Token(token.text().substring(colon + 1), token.column() + colon + 1));
+            } else {
+                positional.add(token);
+            }
+        }
+        int number = line.number();
+        switch (command) {
+            case "GOTO" -> {
+                Token target = requirePositional(positional, 0, line, "GOTO needs a waypoint");
+                if (target.text().equals("@")) {
+                    OpenBlock loop = innermostFor(target, line);
+                    emit(Opcode.GOTO, CompiledProgram.CURSOR, loop.route, loop.slot, number);
+                } else {
+                    emit(Opcode.GOTO, resolveWaypoint(target, line), 0, 0, number);
+                }
+            }
+            case "PATROL" -> {
+                Token route = requirePositional(positional, 0, line, "PATROL needs route:<name>");
+                emit(Opcode.PATROL, resolveRoute(route, line), 0, until(args, line), number);
+            }
+            case "HARVEST", "MINE" -> {
+                Token block = requirePositional(positional, 0, line, command + " needs a block ID");
+                emit(Opcode.valueOf(command), item(block, line), 0, until(args, line), number);
+            }
+            case "CHOP" -> {
+                int block = positional.isEmpty() ? CompiledProgram.NONE : item(positional.get(0), line);
+                emit(Opcode.CHOP, block, 0, until(args, line), number);
+            }
+            case "FEED" -> {
+                Token food = requirePositional(positional, 0, line, "FEED needs an item ID");
+                emit(Opcode.FEED, item(food, line), 0, until(args, line), number);
+            }
+            case "FISH" -> emit(Opcode.FISH, 0, 0, until(args, line), number);
+            case "STORE" -> {
+                Token what = requirePositional(positional, 0, line, "STORE needs an item or category");
+                emit(Opcode.STORE, filter(what, line), 0, 0, number);
+            }
+            case "STORE_ALL" -> {
+                Token except = args.get("except");
+                emit(Opcode.STORE_ALL, except == null ? CompiledProgram.NONE : filter(except, line), 0, 0, number);
+            }
+            case "RETRIEVE" -> {
+                Token what = requirePositional(positional, 0, line, "RETRIEVE needs an item or category");
+                Token from = args.get("from");
+                int source = from == null ? CompiledProgram.NONE : resolveWaypoint(from, line);
+                Token amount = args.get("amount");
+                emit(Opcode.RETRIEVE, filter(what, line), source,
+                        amount == null ? 64 : parsePositive(amount, line), number);
+            }
+            case "CRAFT" -> {
+                Token what = requirePositional(positional, 0, line, "CRAFT needs an item ID");
+                Token amount = args.get("amount");
+                emit(Opcode.CRAFT, item(what, line), amount == null ? 1 : parsePositive(amount, line), 0, number);
+            }
+            case "EQUIP" -> {
+                Token what = requirePositional(positional, 0, line, "EQUIP needs an item ID");
+                Token slot = args.get("slot");
+                int slotIndex = 0;
+                if (slot != null) {
+                    slotIndex = EQUIP_SLOTS.indexOf(slot.text().toLowerCase());
+                    if (slotIndex < 0) {
+                        throw error(slot, line, "Unknown equipment slot '" + slot.text() + "'");
+                    }
+                }
+                emit(Opcode.EQUIP, item(what, line), slotIndex, 0, number);
+            }
+            case "WAIT" -> {
+                Token ticks = requirePositional(positional, 0, line, "WAIT needs a number of ticks");
+                emit(Opcode.WAIT, parsePositive(ticks, line), 0, 0, number);
+            }
+            case "SLEEP" -> emit(Opcode.SLEEP, args.containsKey("until") ? until(args, line) : 0, 0, 0, number);
+            case "WAKE" -> {
+                Token time = args.get("time");
+                if (time == null) {
+                    throw error(head, line, "WAKE needs time:<0-23999>");
+                }
+                emit(Opcode.WAKE, timeOfDay(time, line), 0, 0, number);
+            }
+            case "REPEAT" -> {
+                OpenBlock block = new OpenBlock("REPEAT", line);
+                int count = positional.isEmpty() ? -1 : parseInt(positional.get(0), line, positional.get(0).text());
+                if (count < -1) {
+                    throw error(positional.get(0), line, "REPEAT count cannot be negative");
+                }
+                block.slot = openLoop();
+                block.patch = size;
+                emit(Opcode.REPEAT_BEGIN, count, block.slot, 0, number);
+                block.start = size;
+                blocks.push(block);
+            }
+            case "FOR" -> {
+                Token route = requirePositional(positional, 0, line, "FOR needs route:<name>");
+                OpenBlock block = new OpenBlock("FOR", line);
+                block.route = resolveRoute(route, line);
+                block.slot = openLoop();
+                block.patch = size;
+                emit(Opcode.FOR_BEGIN, block.route, block.slot, 0, number);
+                block.start = size;
+                blocks.push(block);
+            }
+            case "IF" -> {
+                OpenBlock block = new OpenBlock("IF", line);
+                block.patch = size;
+                emit(Opcode.JUMP_IF_NOT, condition(positional, args, line), 0, 0, number);
+                blocks.push(block);
+            }
+            case "ELSE" -> {
+                OpenBlock block = blocks.peek();
+                if (block == null || !block.kind.equals("IF") || block.elsePatch != CompiledProgram.NONE) {
+                    throw error(head, line, "ELSE without a matching IF");
+                }
+                block.elsePatch = size;
+                emit(Opcode.JUMP, 0, 0, 0, number);
+                patch(block.patch, 1, size);
+            }
+            case "ATOMIC" -> {
+                blocks.push(new OpenBlock("ATOMIC", line));
+                emit(Opcode.ATOMIC_BEGIN, 0, 0, 0, number);
+            }
+            case "END" -> closeBlock(head, line);
+            default -> throw error(head, line, "Unknown command '" + head.text() + "'");
+        }
+    }
+
+    private void closeBlock(Token head, SourceLine line) throws ProgramCompileException {
+        OpenBlock block = blocks.poll();
+        if (block == null) {
+            throw error(head, line, "END without an open block");
+        }
+        int number = line.number();
+        switch (block.kind) {
+            case "REPEAT" -> {
+                if (code[block.patch * CompiledProgram.INSN_WIDTH + 1] < 0 && !yields(block.start, size)) {
+                    warn(block.line.head(), block.line,
+                            "REPEAT without a count loops forever without waiting or doing anything; add a WAIT");
+                    spinReported = true;
+                }
+                emit(Opcode.REPEAT_NEXT, block.start, block.slot, 0, number);
+                patch(block.patch, 2, size);
+                openLoops--;
+            }
+            case "FOR" -> {
+                emit(Opcode.FOR_NEXT, block.start, block.slot, block.route, number);
+                patch(block.patch, 2, size);
+                openLoops--;
+            }
+            case "IF" -> {
+                if (block.elsePatch != CompiledProgram.NONE) {
+                    patch(block.elsePatch, 0, size);
+                } else {
+                    patch(block.patch, 1, size);
+                }
+            }
+            case "ATOMIC" -> emit(Opcode.ATOMIC_END, 0, 0, 0, number);
+            default -> throw new IllegalStateException(block.kind);
+        }
+    }
+
+    private int openLoop() {
+        int slot = openLoops++;
+        loopSlots = Math.max(loopSlots, openLoops);
+        return slot;
+    }
+
+    private OpenBlock innermostFor(Token token, SourceLine line) throws ProgramCompileException {
+        for (OpenBlock block : blocks) {
+            if (block.kind.equals("FOR")) {
+                return block;
+            }
+        }
+        throw error(token, line, "'@' can only be used inside FOR");
+    }
+
+    private int condition(List<Token> positional, Map<String, Token> args, SourceLine line) throws ProgramCompileException {
+        int i = 0;
+        boolean negated = false;
+        if (i < positional.size() && positional.get(i).text().equalsIgnoreCase("NOT")) {
+            negated = true;
+            i++;
+        }
+        Token token = requirePositional(positional, i, line, "IF needs a condition");
+        String text = token.text();
+        int colon = text.indexOf(':');
+        String kind = (colon < 0 ? text : text.substring(0, colon)).toLowerCase();
+        Token value = new Token(colon < 0 ? "" : text.substring(colon + 1), token.column() + colon + 1);
+        Condition condition = switch (kind) {
+            case "has" -> {
+                Token amount = args.get("amount");
+                yield new Condition(Condition.Kind.HAS, filter(value, line),
+                        amount == null ? 1 : parsePositive(amount, line), negated);
+            }
+            case "inventory_full" -> new Condition(Condition.Kind.INVENTORY_FULL, 0, 0, negated);
+            case "health_below" -> new Condition(Condition.Kind.HEALTH_BELOW, parsePositive(value, line), 0, negated);
+            case "time_before" -> new Condition(Condition.Kind.TIME_BEFORE, timeOfDay(value, line), 0, negated);
+            case "redstone" -> new Condition(Condition.Kind.REDSTONE, 0, 0, negated);
+            default -> throw error(token, line, "Unknown condition '" + text + "'");
+        };
+        conditions.add(condition);
+        return conditions.size() - 1;
+    }
+
+    private int until(Map<String, Token> args, SourceLine line) throws ProgramCompileException {
+        Token until = args.get("until");
+        return until == null ? CompiledProgram.NONE : timeOfDay(until, line);
+    }
+
+    // --- Emission ---
+
+    private void emit(Opcode op, int a, int b, int c, int line) {
+        if ((size + 1) * CompiledProgram.INSN_WIDTH > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        int base = size * CompiledProgram.INSN_WIDTH;
+        code[base] = op.ordinal();
+        code[base + 1] = a;
+        code[base + 2] = b;
+        code[base + 3] = c;
+        lines[size] = line;
+        size++;
+    }
+
+    private void patch(int pc, int operand, int value) {
+        code[pc * CompiledProgram.INSN_WIDTH + 1 + operand] = value;
+    }
+
+    // --- Parsing Helpers ---
+
+    private static Token requirePositional(List<Token> positional, int index, SourceLine line, String message)
+            throws ProgramCompileException {
+        if (index >= positional.size()) {
+            Token last = line.tokens().get(line.tokens().size() - 1);
+            throw new ProgramCompileException(line.number(), last.column() + last.text().length(), message);
+        }
+        return positional.get(index);
+    }
+
+    private static int timeOfDay(Token token, SourceLine line) throws ProgramCompileException {
+        int time = parseInt(token, line, token.text());
+        if (time < 0 || time >= DAY_LENGTH) {
+            throw error(token, line, "Time of day must be between 0 and " + (DAY_LENGTH - 1));
+        }
+        return time;
+    }
+
+    private static int parsePositive(Token token, SourceLine line) throws ProgramCompileException {
+        int value = parseInt(token, line, token.text());
+        if (value < 0) {
+            throw error(token, line, "Expected a non-negative number");
+        }
+        return value;
+    }
+
+    private static int parseInt(Token token, SourceLine line, String text) throws ProgramCompileException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw error(token, line, "Expected a number but found '" + token.text() + "'");
+        }
+    }
+
+    // --- Validation ---
+
+    private void checkId(Token token, SourceLine line, String id) {
+        if (!isWellFormedId(id)) {
+            warn(token, line, "Malformed item ID '" + token.text() + "'");
+        } else if (!knownId.test(id)) {
+            warn(token, line, "Unknown item or block '" + id + "'");
+        }
+    }
+
+    /**
+     * Same character rules as a Minecraft resource identifier: {@code namespace:path}.
+     */
+    static boolean isWellFormedId(String id) {
+        int colon = id.indexOf(':');
+        if (colon <= 0 || colon == id.length() - 1) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-' || c == '.'
+                    || (i > colon && c == '/');
+            if (!valid && i != colon) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether any instruction in {@code [from, to)} can end the current step: an action, WAIT,
+     * SLEEP or WAKE.
+     */
+    private boolean yields(int from, int to) {
+        for (int pc = from; pc < to; pc++) {
+            Opcode op = Opcode.fromIndex(code[pc * CompiledProgram.INSN_WIDTH]);
+            if (op.isAction() || op == Opcode.WAIT || op == Opcode.SLEEP || op == Opcode.WAKE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void warn(Token token, SourceLine line, String message) {
+        diagnostics.add(new Diagnostic(line.number(), token.column(), message));
+    }
+
+    private static ProgramCompileException error(Token token, SourceLine line, String message) {
+        return new ProgramCompileException(line.number(), token.column(), message);
+    }
+}
@@ -0,0 +1,223 @@
+package dev.ecstaticpichu.promaton.program;
+
+import java.util.Arrays;
+
+/**
+ * Carries a {@link ProgramState} over from one version of a program to an edited one.
+ *
+ * <p>Instructions are compared by what they do rather than by their raw operands: side-table
+ * indices are resolved to the items, waypoints, routes and conditions they name, and jump targets
+ * are left out since they move with every edit. The longest common subsequence of the two
+ * instruction streams then maps old positions to new ones.
+ */
+public final class ProgramDiff {
+
+    // Largest middle section, in table cells, worth the quadratic LCS on the server thread; about 4MB
+    private static final long MAX_LCS_CELLS = 1L << 20;
+
+    private ProgramDiff() {
+    }
+
+    /**
+     * Moves {@code state} from {@code from} onto {@code to}: the program counter, the trigger
+     * return address and the counters of every loop whose header survived the edit.
+     *
+     * @return true if the current instruction is unchanged, so an action in progress may keep
+     * running; false if the state was reset to the start of {@code to}
+     */
+    public static boolean migrate(CompiledProgram from, CompiledProgram to, ProgramState state) {
+        int[] map = map(from, to);
+        int pc = state.getPc();
+        if (pc < 0 || pc >= map.length || map[pc] < 0) {
+            state.reset(to);
+            return false;
+        }
+
+        int[] oldLoops = state.getLoopCounters();
+        int[] newLoops = new int[to.getLoopSlots()];
+        for (int oldPc = 0; oldPc < map.length; oldPc++) {
+            Opcode op = from.getOpcode(oldPc);
+            if (map[oldPc] >= 0 && (op == Opcode.REPEAT_BEGIN || op == Opcode.FOR_BEGIN)) {
+                int oldSlot = from.getOperand(oldPc, 1);
+                int newSlot = to.getOperand(map[oldPc], 1);
+                if (oldSlot < oldLoops.length && newSlot < newLoops.length) {
+                    newLoops[newSlot] = oldLoops[oldSlot];
+                }
+            }
+        }
+
+        int returnPc = state.getReturnPc();
+        if (returnPc >= 0) {
+            // Mid-handler with its caller gone: finish the handler, then start the main code over
+            returnPc = returnPc < map.length && map[returnPc] >= 0 ? map[returnPc] : 0;
+        }
+
+        state.setSourceHash(to.getSourceHash());
+        state.setPc(map[pc]);
+        state.setLoopCounters(newLoops);
+        state.setReturnPc(returnPc);
+        return true;
+    }
+
+    /**
+     * @return for every instruction of {@code from}, its position in {@code to}, or -1 if it was
+     * changed or removed
+     */
+    static int[] map(CompiledProgram from, CompiledProgram to) {
+        String[] a = signatures(from);
+        String[] b = signatures(to);
+        int[] map = new int[a.length];
+        Arrays.fill(map, -1);
+
+        // Edits are usually local, so only the middle between a common prefix and suffix needs the full LCS
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) {
+            map[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) {
+            map[a.length - 1 - suffix] = b.length - 1 - suffix;
+            suffix++;
+        }
+
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        if ((long) (n + 1) * (m + 1) > MAX_LCS_CELLS) {
+            // Too much rewritten to match up cheaply; only a state inside the prefix or suffix carries over
+            return map;
+        }
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = a[prefix + i].equals(b[prefix + j])
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (a[prefix + i].equals(b[prefix + j])) {
+                map[prefix + i] = prefix + j;
+                i++;
+                j++;
+            } else if (lcs[i + 1][j] >= lcs[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return map;
+    }
+
+    // --- Signatures ---
+
+    private static String[] signatures(CompiledProgram program) {
+        String[] signatures = new String[program.getInstructionCount()];
+        StringBuilder builder = new StringBuilder();
+        for (int pc = 0; pc < signatures.length; pc++) {
+            builder.setLength(0);
+            signature(program, pc, builder);
+            signatures[pc] = builder.toString();
+        }
+        return signatures;
+    }
+
+    private static void signature(CompiledProgram program, int pc, StringBuilder out) {
+        Opcode op = program.getOpcode(pc);
+        int a = program.getOperand(pc, 0);
+        int b = program.getOperand(pc, 1);
+        int c = program.getOperand(pc, 2);
+        out.append(op.name());
+        switch (op) {
+            case JUMP_IF_NOT -> condition(program, program.getCondition(a), out);
+            case REPEAT_BEGIN, WAIT, SLEEP, WAKE -> out.append(' ').append(a);
+            case FOR_BEGIN -> route(program, a, out);
+            case FOR_NEXT -> route(program, c, out);
+            case GOTO -> {
+                if (a == CompiledProgram.CURSOR) {
+                    out.append(" @");
+                    route(program, b, out);
+                } else {
+                    waypoint(program, a, out);
+                }
+            }
+            case PATROL -> {
+                route(program, a, out);
+                out.append(' ').append(c);
+            }
+            case HARVEST, MINE, CHOP, FEED -> {
+                out.append(' ').append(a == CompiledProgram.NONE ? "-" : program.getItem(a));
+                out.append(' ').append(c);
+            }
+            case FISH -> out.append(' ').append(c);
+            case STORE -> filter(program, a, out);
+            case STORE_ALL -> {
+                if (a != CompiledProgram.NONE) {
+                    filter(program, a, out);
+                }
+            }
+            case RETRIEVE -> {
+                filter(program, a, out);
+                if (b != CompiledProgram.NONE) {
+                    waypoint(program, b, out);
+                }
+                out.append(' ').append(c);
+            }
+            case CRAFT, EQUIP -> out.append(' ').append(program.getItem(a)).append(' ').append(b);
+            default -> {
+                // JUMP, REPEAT_NEXT and the rest carry nothing but jump targets and loop slots
+            }
+        }
+    }
+
+    private static void condition(CompiledProgram program, Condition condition, StringBuilder out) {
+        out.append(' ').append(condition.negated() ? "!" : "").append(condition.kind().name());
+        if (condition.kind() == Condition.Kind.HAS) {
+            filter(program, condition.arg(), out);
+            out.append(' ').append(condition.amount());
+        } else {
+            out.append(' ').append(condition.arg());
+        }
+    }
+
+    private static void filter(CompiledProgram program, int filter, StringBuilder out) {
+        int index = CompiledProgram.filterIndex(filter);
+        if (CompiledProgram.isCategoryFilter(filter)) {
+            category(program, index, out);
+        } else {
+            out.append(' ').append(program.getItem(index));
+        }
+    }
+
+    private static void category(CompiledProgram program, int index, StringBuilder out) {
+        String[] items = program.getCategoryItems(index).clone();
+        Arrays.sort(items);
+        out.append(" {");
+        for (String item : items) {
+            out.append(' ').append(item);
+        }
+        out.append(" }");
+    }
+
+    private static void waypoint(CompiledProgram program, int index, StringBuilder out) {
+        if (index == CompiledProgram.HOME) {
+            out.append(" home");
+            return;
+        }
+        out.append(' ');
+        for (int axis = 0; axis < 3; axis++) {
+            out.append(program.isWaypointRelative(index, axis) ? "~" : "").append(program.getWaypointCoord(index, axis)).append(',');
+        }
+    }
+
+    private static void route(CompiledProgram program, int index, StringBuilder out) {
+        out.append(" [");
+        for (int waypoint : program.getRoute(index)) {
+            waypoint(program, waypoint, out);
+        }
+        out.append(" ]");
+    }
+}
@@ -0,0 +1,23 @@
+package dev.ecstaticpichu.promaton.program;
+
+/**
+ * The world-facing side of the {@link ProgramVM}: time, conditions and long-running actions.
+ */
+public interface ProgramHost {
+
+    long getGameTime();
+
+    long getDayTime();
+
+    boolean testCondition(CompiledProgram program, Condition condition);
+
+    /**
+     * Starts the action at the current instruction. Returning anything but {@link TaskStatus#RUNNING}
+     * lets the VM continue with the next instruction in the same step.
+     */
+    TaskStatus startTask(CompiledProgram program, ProgramState state, Opcode op, int a, int b, int c);
+
+    TaskStatus tickTask();
+
+    void cancelTask();
+}
@@ -0,0 +1,44 @@
+package dev.ecstaticpichu.promaton.program;
+
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.network.Filterable;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.WritableBookContent;
+import net.minecraft.world.item.component.WrittenBookContent;
+
+import java.util.stream.Collectors;
+
+public final class ProgramSource {
+
+    private ProgramSource() {
+    }
+
+    /**
+     * Book text of a Program stack with pages joined by newlines, or an empty string if it has none.
+     */
+    public static String read(ItemStack stack) {
+        WritableBookContent writable = stack.get(DataComponents.WRITABLE_BOOK_CONTENT);
+        if (writable != null) {
+            return writable.getPages(false).collect(Collectors.joining("\n"));
+        }
+        WrittenBookContent written = stack.get(DataComponents.WRITTEN_BOOK_CONTENT);
+        if (written != null) {
+            return written.pages().stream()
+                    .map(Filterable::raw)
+                    .map(Component::getString)
+                    .collect(Collectors.joining("\n"));
+        }
+        return "";
+    }
+
+    /**
+     * Whether {@code id} names a registered item or block; used to validate books at insert time.
+     */
+    public static boolean isKnownId(String id) {
+        Identifier key = Identifier.tryParse(id);
+        return key != null && (BuiltInRegistries.ITEM.containsKey(key) || BuiltInRegistries.BLOCK.containsKey(key));
+    }
+}
@@ -0,0 +1,163 @@
+package dev.ecstaticpichu.promaton.program;
+
+import java.util.Arrays;
+
+/**
+ * Per-automaton execution state for a {@link CompiledProgram}. The program image itself is shared
+ * and never mutated; everything that changes while running lives here.
+ */
+public class ProgramState {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    public enum Phase {
+        RUNNING,
+        WAITING,
+        SLEEPING,
+        HALTED
+    }
+
+    private long sourceHash = 0L;
+    private int pc = 0;
+    private int[] loopCounters = new int[0];
+    private int returnPc = -1;
+    private int atomicDepth = 0;
+    private long waitUntil = NO_TIME;
+    private long deadline = NO_TIME;
+    private boolean taskActive = false;
+    private Phase phase = Phase.RUNNING;
+    // Raised triggers not yet delivered, one bit per Trigger; survives reset since they come from outside
+    private int pendingTriggers = 0;
+
+    public void reset(CompiledProgram program) {
+        this.sourceHash = program.getSourceHash();
+        this.pc = 0;
+        this.loopCounters = new int[program.getLoopSlots()];
+        this.returnPc = -1;
+        this.atomicDepth = 0;
+        this.waitUntil = NO_TIME;
+        this.deadline = NO_TIME;
+        this.taskActive = false;
+        this.phase = Phase.RUNNING;
+    }
+
+    /**
+     * Makes this state an independent copy of {@code other}.
+     */
+    public void copyFrom(ProgramState other) {
+        this.sourceHash = other.sourceHash;
+        this.pc = other.pc;
+        this.loopCounters = other.loopCounters.clone();
+        this.returnPc = other.returnPc;
+        this.atomicDepth = other.atomicDepth;
+        this.waitUntil = other.waitUntil;
+        this.deadline = other.deadline;
+        this.taskActive = other.taskActive;
+        this.phase = other.phase;
+        this.pendingTriggers = other.pendingTriggers;
+    }
+
+    /**
+     * Whether this state was produced by (or restored for) the given program image.
+     */
+    public boolean belongsTo(CompiledProgram program) {
+        return sourceHash == program.getSourceHash()
+                && loopCounters.length == program.getLoopSlots()
+                && pc >= 0 && pc < program.getInstructionCount();
+    }
+
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    public void setSourceHash(long sourceHash) {
+        this.sourceHash = sourceHash;
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    public void setPc(int pc) {
+        this.pc = pc;
+    }
+
+    public int[] getLoopCounters() {
+        return loopCounters;
+    }
+
+    public int getLoopCounter(int slot) {
+        return loopCounters[slot];
+    }
+
+    public void setLoopCounters(int[] loopCounters) {
+        this.loopCounters = Arrays.copyOf(loopCounters, loopCounters.length);
+    }
+
+    public int getReturnPc() {
+        return returnPc;
+    }
+
+    public void setReturnPc(int returnPc) {
+        this.returnPc = returnPc;
+    }
+
+    public int getAtomicDepth() {
+        return atomicDepth;
+    }
+
+    public void setAtomicDepth(int atomicDepth) {
+        this.atomicDepth = atomicDepth;
+    }
+
+    public long getWaitUntil() {
+        return waitUntil;
+    }
+
+    public void setWaitUntil(long waitUntil) {
+        this.waitUntil = waitUntil;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    public boolean isTaskActive() {
+        return taskActive;
+    }
+
+    public void setTaskActive(boolean taskActive) {
+        this.taskActive = taskActive;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    public int getPendingTriggers() {
+        return pendingTriggers;
+    }
+
+    public void setPendingTriggers(int pendingTriggers) {
+        this.pendingTriggers = pendingTriggers;
+    }
+
+    public void raise(Trigger trigger) {
+        this.pendingTriggers |= trigger.mask();
+    }
+
+    /**
+     * Whether the program is currently inside a trigger handler.
+     */
+    public boolean isHandlingTrigger() {
+        return returnPc >= 0;
+    }
+}
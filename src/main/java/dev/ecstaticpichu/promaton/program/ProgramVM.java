@@ -0,0 +1,181 @@
+package dev.ecstaticpichu.promaton.program;
+
+/**
+ * Steps a {@link ProgramState} through a {@link CompiledProgram}. Each call executes at most
+ * {@code budget} instructions and returns as soon as an action, WAIT, SLEEP or WAKE has to span
+ * ticks, so a program without any yielding command can never hold up a server tick.
+ *
+ * <p>Raised {@link Trigger}s are delivered at the start of a step, one at a time and never inside
+ * an ATOMIC block: whatever the main code was doing is cancelled, the handler runs, and its RETURN
+ * restarts the interrupted instruction.
+ */
+public final class ProgramVM {
+
+    private ProgramVM() {
+    }
+
+    /**
+     * @return the number of instructions executed
+     */
+    public static int step(CompiledProgram program, ProgramState state, ProgramHost host, int budget) {
+        if (state.getPendingTriggers() != 0 && !state.isHandlingTrigger() && state.getAtomicDepth() == 0) {
+            interrupt(program, state, host);
+        }
+        if (state.getPhase() == ProgramState.Phase.HALTED) {
+            return 0;
+        }
+        long now = host.getGameTime();
+
+        if (state.getWaitUntil() != ProgramState.NO_TIME) {
+            if (now < state.getWaitUntil()) {
+                return 0;
+            }
+            state.setWaitUntil(ProgramState.NO_TIME);
+            state.setPhase(ProgramState.Phase.RUNNING);
+            state.setPc(state.getPc() + 1);
+        }
+
+        if (state.isTaskActive()) {
+            if (state.getDeadline() != ProgramState.NO_TIME && now >= state.getDeadline()) {
+                host.cancelTask();
+            } else if (host.tickTask() == TaskStatus.RUNNING) {
+                return 0;
+            }
+            state.setTaskActive(false);
+            state.setDeadline(ProgramState.NO_TIME);
+            state.setPc(state.getPc() + 1);
+        }
+
+        int[] code = program.getCode();
+        int[] loops = state.getLoopCounters();
+        int executed = 0;
+        while (executed < budget) {
+            int pc = state.getPc();
+            int base = pc * CompiledProgram.INSN_WIDTH;
+            Opcode op = Opcode.fromIndex(code[base]);
+            int a = code[base + 1];
+            int b = code[base + 2];
+            int c = code[base + 3];
+            executed++;
+
+            switch (op) {
+                case NOP -> state.setPc(pc + 1);
+                case HALT -> {
+                    state.setPhase(ProgramState.Phase.HALTED);
+                    return executed;
+                }
+                case JUMP -> state.setPc(a);
+                case JUMP_IF_NOT -> state.setPc(host.testCondition(program, program.getCondition(a)) ? pc + 1 : b);
+                case REPEAT_BEGIN -> {
+                    if (a == 0) {
+                        state.setPc(c);
+                    } else {
+                        loops[b] = a;
+                        state.setPc(pc + 1);
+                    }
+                }
+                case REPEAT_NEXT -> {
+                    int remaining = loops[b];
+                    if (remaining < 0) {
+                        state.setPc(a);
+                    } else if (remaining > 1) {
+                        loops[b] = remaining - 1;
+                        state.setPc(a);
+                    } else {
+                        state.setPc(pc + 1);
+                    }
+                }
+                case FOR_BEGIN -> {
+                    if (program.getRoute(a).length == 0) {
+                        state.setPc(c);
+                    } else {
+                        loops[b] = 0;
+                        state.setPc(pc + 1);
+                    }
+                }
+                case FOR_NEXT -> {
+                    int next = loops[b] + 1;
+                    if (next < program.getRoute(c).length) {
+                        loops[b] = next;
+                        state.setPc(a);
+                    } else {
+                        state.setPc(pc + 1);
+                    }
+                }
+                case ATOMIC_BEGIN -> {
+                    state.setAtomicDepth(state.getAtomicDepth() + 1);
+                    state.setPc(pc + 1);
+                }
+                case ATOMIC_END -> {
+                    state.setAtomicDepth(Math.max(0, state.getAtomicDepth() - 1));
+                    state.setPc(pc + 1);
+                }
+                case RETURN -> {
+                    state.setPc(Math.max(0, state.getReturnPc()));
+                    state.setReturnPc(-1);
+                    // Yield so the host sees the handler finish before the main code goes on
+                    return executed;
+                }
+                case WAIT -> {
+                    state.setWaitUntil(now + a);
+                    state.setPhase(ProgramState.Phase.WAITING);
+                    return executed;
+                }
+                case SLEEP, WAKE -> {
+                    long ticks = ticksUntil(host.getDayTime(), a);
+                    if (ticks == 0) {
+                        state.setPc(pc + 1);
+                    } else {
+                        state.setWaitUntil(now + ticks);
+                        state.setPhase(ProgramState.Phase.SLEEPING);
+                        return executed;
+                    }
+                }
+                default -> {
+                    TaskStatus status = host.startTask(program, state, op, a, b, c);
+                    if (status == TaskStatus.RUNNING) {
+                        state.setTaskActive(true);
+                        state.setDeadline(op.hasUntil() && c >= 0 ? now + ticksUntil(host.getDayTime(), c) : ProgramState.NO_TIME);
+                        return executed;
+                    }
+                    state.setPc(pc + 1);
+                }
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * Enters the handler of the highest-priority pending trigger. Triggers the program has no
+     * handler for are dropped.
+     */
+    private static void interrupt(CompiledProgram program, ProgramState state, ProgramHost host) {
+        int pending = state.getPendingTriggers();
+        while (pending != 0) {
+            int index = Integer.numberOfTrailingZeros(pending);
+            pending &= pending - 1;
+            int handler = program.getTriggerPc(Trigger.fromIndex(index));
+            if (handler < 0) {
+                continue;
+            }
+            if (state.isTaskActive()) {
+                host.cancelTask();
+                state.setTaskActive(false);
+                state.setDeadline(ProgramState.NO_TIME);
+            }
+            state.setWaitUntil(ProgramState.NO_TIME);
+            state.setReturnPc(state.getPc());
+            state.setPc(handler);
+            state.setPhase(ProgramState.Phase.RUNNING);
+            break;
+        }
+        state.setPendingTriggers(pending);
+    }
+
+    /**
+     * Ticks from {@code dayTime} until the clock next reads {@code timeOfDay}; zero if it already does.
+     */
+    public static long ticksUntil(long dayTime, int timeOfDay) {
+        return Math.floorMod(timeOfDay - dayTime, (long) ProgramCompiler.DAY_LENGTH);
+    }
+}
@@ -0,0 +1,7 @@
+package dev.ecstaticpichu.promaton.program;
+
+public enum TaskStatus {
+    RUNNING,
+    DONE,
+    FAILED
+}
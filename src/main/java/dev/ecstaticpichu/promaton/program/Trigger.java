@@ -0,0 +1,49 @@
+package dev.ecstaticpichu.promaton.program;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Events a program can handle with a {@code [COMMANDS trigger:name]} section, in priority order:
+ * when several are pending, the first one listed runs first.
+ */
+public enum Trigger {
+    LOW_HEALTH("low_health"),
+    INVENTORY_FULL("inventory_full"),
+    REDSTONE("redstone"),
+    ENLIST("enlist"),
+    DISMISS("dismiss");
+
+    private static final Trigger[] VALUES = values();
+
+    private final String name;
+
+    Trigger(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int mask() {
+        return 1 << this.ordinal();
+    }
+
+    public static Trigger fromIndex(int index) {
+        return VALUES[index];
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+
+    @Nullable
+    public static Trigger fromName(String name) {
+        for (Trigger trigger : VALUES) {
+            if (trigger.name.equals(name)) {
+                return trigger;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,110 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.entity.ProgramFootprint;
+import dev.ecstaticpichu.promaton.item.ModItems;
+import dev.ecstaticpichu.promaton.program.ProgramState;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * Keeps the chunks of automatons carrying an Anchor Crystal loaded, and no others.
+ *
+ * <p>Instead of a square around the automaton, an anchor holds the {@link ProgramFootprint} of
+ * its program plus the chunk it stands in. Tickets are let go while the program is waiting or
+ * asleep for longer than {@link #SUSPEND_AFTER} ticks, so the automaton goes dormant with the
+ * chunk, and are taken again shortly before it is due to wake.
+ */
+public final class AnchorManager {
+
+    public static final TicketType TICKET = Registry.register(BuiltInRegistries.TICKET_TYPE,
+            Identifier.fromNamespaceAndPath(ProgrammableAutomatons.MOD_ID, "anchor"),
+            new TicketType(0L, TicketType.FLAG_LOADING | TicketType.FLAG_SIMULATION | TicketType.FLAG_KEEP_DIMENSION_ACTIVE));
+    // The smallest radius that ticks entities in the ticketed chunk itself, as /forceload does
+    public static final int TICKET_RADIUS = 2;
+
+    // Ticks between an automaton re-checking its anchor
+    public static final int REFRESH_INTERVAL = 20;
+    // Shorter waits keep their tickets; unloading and reloading would cost more than they save
+    private static final long SUSPEND_AFTER = 1200L;
+    // Tickets come back this long before the wait ends, so the chunk is in when it does
+    private static final long RESUME_LEAD = 100L;
+
+    private AnchorManager() {
+    }
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Anchor Manager for " + ProgrammableAutomatons.MOD_ID);
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            for (ServerLevel level : server.getAllLevels()) {
+                AnchorTickets.get(level).attach(level);
+            }
+        });
+        ServerEntityEvents.ENTITY_UNLOAD.register((entity, level) -> {
+            Entity.RemovalReason reason = entity.getRemovalReason();
+            if (entity instanceof AutomatonEntity automaton && reason != null && reason.shouldDestroy()) {
+                AnchorTickets.get(level).remove(level, automaton.getUUID());
+            }
+        });
+        ServerTickEvents.END_SERVER_TICK.register(AnchorManager::runTick);
+    }
+
+    /**
+     * Brings an automaton's anchor in line with its inventory and program. Called by the
+     * automaton every {@link #REFRESH_INTERVAL} ticks while it is not parked.
+     */
+    public static void update(AutomatonEntity automaton) {
+        if (!(automaton.level() instanceof ServerLevel level)) {
+            return;
+        }
+        AnchorTickets tickets = AnchorTickets.get(level);
+        ProgramFootprint footprint = automaton.getBrain().getFootprint();
+        if (footprint == null
+                || automaton.getCompanionOf() != null
+                || automaton.getBrain().getState().getPhase() == ProgramState.Phase.HALTED
+                || automaton.getInventoryIndex().count(ModItems.ANCHOR_CRYSTAL) == 0) {
+            tickets.remove(level, automaton.getUUID());
+            return;
+        }
+        tickets.set(level, automaton.getUUID(), footprint.getChunks(), ChunkPos.asLong(automaton.blockPosition()));
+    }
+
+    /**
+     * Called when an automaton parks until game time {@code wakeTime}.
+     */
+    public static void onPark(AutomatonEntity automaton, long wakeTime) {
+        if (automaton.level() instanceof ServerLevel level && wakeTime - level.getGameTime() >= SUSPEND_AFTER) {
+            AnchorTickets.get(level).suspend(level, automaton.getUUID(), wakeTime - RESUME_LEAD);
+        }
+    }
+
+    public static int getLoadedChunkCount(MinecraftServer server) {
+        int count = 0;
+        for (ServerLevel level : server.getAllLevels()) {
+            count += AnchorTickets.get(level).getLoadedChunkCount();
+        }
+        return count;
+    }
+
+    private static void runTick(MinecraftServer server) {
+        if (server.getTickCount() % REFRESH_INTERVAL != 0) {
+            return;
+        }
+        for (ServerLevel level : server.getAllLevels()) {
+            AnchorTickets tickets = AnchorTickets.get(level);
+            if (tickets.size() > 0) {
+                tickets.resumeDue(level, level.getGameTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.core.UUIDUtil;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.saveddata.SavedDataType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+/**
+ * Per-dimension chunk tickets of anchored automatons, saved with the world so anchors come back
+ * after a restart. Each chunk holds one ticket however many anchors need it; the ticket goes
+ * when the last of them lets go.
+ */
+public final class AnchorTickets extends SavedData {
+
+    public static final long ACTIVE = Long.MIN_VALUE;
+
+    private static final Codec<Anchor> ANCHOR_CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            UUIDUtil.CODEC.fieldOf("id").forGetter(anchor -> anchor.id),
+            Codec.LONG_STREAM.xmap(LongStream::toArray, Arrays::stream).fieldOf("chunks").forGetter(anchor -> anchor.chunks),
+            Codec.LONG.fieldOf("current").forGetter(anchor -> anchor.current),
+            Codec.LONG.fieldOf("resume_at").forGetter(anchor -> anchor.resumeAt)
+    ).apply(instance, Anchor::new));
+
+    private static final Codec<AnchorTickets> CODEC = ANCHOR_CODEC.listOf().xmap(
+            AnchorTickets::new, data -> List.copyOf(data.anchors.values())).fieldOf("anchors").codec();
+
+    public static final SavedDataType<AnchorTickets> TYPE = new SavedDataType<>(
+            ProgrammableAutomatons.MOD_ID + "_anchors", AnchorTickets::new, CODEC, null);
+
+    private final Map<UUID, Anchor> anchors = new HashMap<>();
+    // Anchors holding each chunk; not saved, rebuilt by attach() on server start
+    private final Long2IntOpenHashMap holders = new Long2IntOpenHashMap();
+
+    private static final class Anchor {
+        private final UUID id;
+        private final long[] chunks;
+        private final long current;
+        private long resumeAt;
+
+        private Anchor(UUID id, long[] chunks, long current, long resumeAt) {
+            this.id = id;
+            this.chunks = chunks;
+            this.current = current;
+            this.resumeAt = resumeAt;
+        }
+    }
+
+    public AnchorTickets() {
+    }
+
+    private AnchorTickets(List<Anchor> anchors) {
+        for (Anchor anchor : anchors) {
+            this.anchors.put(anchor.id, anchor);
+        }
+    }
+
+    public static AnchorTickets get(ServerLevel level) {
+        return level.getDataStorage().computeIfAbsent(TYPE);
+    }
+
+    /**
+     * Takes tickets for every active anchor read from disk.
+     */
+    void attach(ServerLevel level) {
+        for (Anchor anchor : this.anchors.values()) {
+            if (anchor.resumeAt == ACTIVE) {
+                this.acquire(level, anchor);
+            }
+        }
+    }
+
+    // --- Anchors ---
+
+    /**
+     * Anchors {@code id} to {@code chunks} plus the chunk it is standing in, releasing whatever
+     * it held before that is no longer needed.
+     *
+     * @param chunks sorted packed chunk positions; kept, so must not be modified afterwards
+     */
+    void set(ServerLevel level, UUID id, long[] chunks, long current) {
+        Anchor anchor = this.anchors.get(id);
+        if (anchor != null && anchor.resumeAt == ACTIVE && anchor.chunks == chunks && anchor.current == current) {
+            return;
+        }
+        Anchor updated = new Anchor(id, chunks, current, ACTIVE);
+        // Take the new tickets first, so chunks in both sets never drop to zero holders
+        this.acquire(level, updated);
+        if (anchor != null && anchor.resumeAt == ACTIVE) {
+            this.release(level, anchor);
+        }
+        this.anchors.put(id, updated);
+        this.setDirty();
+    }
+
+    /**
+     * Lets go of an anchor's chunks until game time {@code resumeAt}.
+     */
+    void suspend(ServerLevel level, UUID id, long resumeAt) {
+        Anchor anchor = this.anchors.get(id);
+        if (anchor != null && anchor.resumeAt == ACTIVE) {
+            this.release(level, anchor);
+            anchor.resumeAt = resumeAt;
+            this.setDirty();
+        }
+    }
+
+    void remove(ServerLevel level, UUID id) {
+        Anchor anchor = this.anchors.remove(id);
+        if (anchor != null) {
+            if (anchor.resumeAt == ACTIVE) {
+                this.release(level, anchor);
+            }
+            this.setDirty();
+        }
+    }
+
+    /**
+     * Takes the tickets of suspended anchors back once their time comes.
+     */
+    void resumeDue(ServerLevel level, long now) {
+        for (Anchor anchor : this.anchors.values()) {
+            if (anchor.resumeAt != ACTIVE && anchor.resumeAt <= now) {
+                anchor.resumeAt = ACTIVE;
+                this.acquire(level, anchor);
+                this.setDirty();
+            }
+        }
+    }
+
+    public int size() {
+        return this.anchors.size();
+    }
+
+    public int getLoadedChunkCount() {
+        return this.holders.size();
+    }
+
+    // --- Tickets ---
+
+    private void acquire(ServerLevel level, Anchor anchor) {
+        for (long chunk : anchor.chunks) {
+            this.acquire(level, chunk);
+        }
+        this.acquire(level, anchor.current);
+    }
+
+    private void release(ServerLevel level, Anchor anchor) {
+        for (long chunk : anchor.chunks) {
+            this.release(level, chunk);
+        }
+        this.release(level, anchor.current);
+    }
+
+    private void acquire(ServerLevel level, long chunk) {
+        if (this.holders.addTo(chunk, 1) == 0) {
+            level.getChunkSource().addTicketWithRadius(AnchorManager.TICKET, new ChunkPos(chunk), AnchorManager.TICKET_RADIUS);
+        }
+    }
+
+    private void release(ServerLevel level, long chunk) {
+        int holders = this.holders.addTo(chunk, -1);
+        if (holders <= 1) {
+            this.holders.remove(chunk);
+        }
+        if (holders == 1) {
+            level.getChunkSource().removeTicketWithRadius(AnchorManager.TICKET, new ChunkPos(chunk), AnchorManager.TICKET_RADIUS);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import dev.ecstaticpichu.promaton.config.ModConfig;
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs automaton behaviour for the whole server inside a fixed time budget per tick.
+ *
+ * <p>An automaton's entity tick only queues it here. At the end of the server tick the queue is
+ * drained in FIFO order until the budget is spent; whatever is left stays at the front and runs
+ * first on the next tick, while freshly ticked automatons join at the back. That keeps the work
+ * round-robin and lets nobody starve, however many automatons are loaded.
+ *
+ * <p>Each run is also charged to the automaton's owner in {@link OwnerQuotas}; automatons of an
+ * owner who is over quota are skipped for the tick and keep their place in the queue.
+ *
+ * <p>Automatons waiting on WAIT, SLEEP or WAKE are parked in a {@link TimerWheel} instead: they
+ * leave the queue entirely, their entity tick does next to nothing, and the wheel re-queues them
+ * on the game tick they are due.
+ */
+public final class AutomatonScheduler {
+
+    public static final int STATS_WINDOW = 100;
+
+    private static final ArrayDeque<AutomatonEntity> queue = new ArrayDeque<>();
+    private static final List<AutomatonEntity> throttled = new ArrayList<>();
+    private static final OwnerQuotas quotas = new OwnerQuotas();
+    private static TimerWheel<AutomatonEntity> wheel = null;
+
+    // Last tick
+    private static long lastTickNanos = 0L;
+    private static int lastTickRun = 0;
+    private static int lastTickDeferred = 0;
+    private static int lastTickThrottled = 0;
+
+    // Rolling window of STATS_WINDOW ticks
+    private static int windowTicks = 0;
+    private static long windowNanos = 0L;
+    private static long windowPeakNanos = 0L;
+    private static long windowRun = 0L;
+    private static long windowDeferred = 0L;
+    private static Stats lastWindow = new Stats(0, 0L, 0L, 0.0, 0.0);
+
+    public record Stats(int ticks, long averageNanos, long peakNanos, double averageRun, double averageDeferred) {
+    }
+
+    private AutomatonScheduler() {
+    }
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Automaton Scheduler for " + ProgrammableAutomatons.MOD_ID);
+        ServerTickEvents.END_SERVER_TICK.register(AutomatonScheduler::runTick);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> reset());
+        ServerEntityEvents.ENTITY_UNLOAD.register((entity, level) -> {
+            if (entity instanceof AutomatonEntity automaton) {
+                unpark(automaton);
+            }
+        });
+    }
+
+    /**
+     * Queues an automaton for one behaviour step. Calling again before it has run is a no-op.
+     */
+    public static void request(AutomatonEntity automaton) {
+        if (!automaton.isScheduled()) {
+            automaton.setScheduled(true);
+            queue.addLast(automaton);
+        }
+    }
+
+    // --- Parking ---
+
+    /**
+     * Takes an automaton out of the active set until game time {@code wakeTime}.
+     */
+    public static void park(AutomatonEntity automaton, long wakeTime) {
+        unpark(automaton);
+        if (wheel == null) {
+            wheel = new TimerWheel<>(automaton.level().getGameTime());
+        }
+        automaton.setParkedTimer(wheel.schedule(automaton, wakeTime));
+    }
+
+    /**
+     * Wakes a parked automaton early, e.g. because its program changed. No-op if it is not parked.
+     */
+    public static void wake(AutomatonEntity automaton) {
+        if (automaton.getParkedTimer() != null) {
+            unpark(automaton);
+            request(automaton);
+        }
+    }
+
+    private static void unpark(AutomatonEntity automaton) {
+        TimerWheel.Timer<AutomatonEntity> timer = automaton.getParkedTimer();
+        if (timer != null) {
+            if (wheel != null) {
+                wheel.cancel(timer);
+            }
+            automaton.setParkedTimer(null);
+        }
+    }
+
+    public static int getParkedCount() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    // --- Tick ---
+
+    private static void runTick(MinecraftServer server) {
+        if (wheel != null) {
+            wheel.advance(server.overworld().getGameTime(), automaton -> {
+                automaton.setParkedTimer(null);
+                if (!automaton.isRemoved()) {
+                    request(automaton);
+                }
+            });
+        }
+
+        long budget = (long) (ModConfig.get().tickBudgetMs * 1_000_000L);
+        long start = System.nanoTime();
+        long now = start;
+        int run = 0;
+        quotas.beginTick(budget);
+
+        // Always make progress on at least one automaton, even with a zero budget
+        while (!queue.isEmpty() && (run == 0 || now - start < budget)) {
+            AutomatonEntity automaton = queue.pollFirst();
+            if (automaton.isRemoved() || !automaton.isAlive()) {
+                automaton.setScheduled(false);
+                continue;
+            }
+            OwnerQuotas.Account account = quotas.account(automaton.getOwner());
+            if (account.isOverdrawn()) {
+                quotas.throttle(account);
+                automaton.getBrain().noteThrottled();
+                throttled.add(automaton);
+                continue;
+            }
+            automaton.setScheduled(false);
+            long before = System.nanoTime();
+            int instructions = automaton.behaviourTick();
+            now = System.nanoTime();
+            quotas.charge(account, now - before, instructions);
+            run++;
+        }
+
+        // Throttled automatons stay queued (and flagged) behind everyone else
+        lastTickThrottled = throttled.size();
+        queue.addAll(throttled);
+        throttled.clear();
+
+        record(now - start, run, queue.size());
+    }
+
+    private static void record(long nanos, int run, int deferred) {
+        lastTickNanos = nanos;
+        lastTickRun = run;
+        lastTickDeferred = deferred;
+
+        windowTicks++;
+        windowNanos += nanos;
+        windowPeakNanos = Math.max(windowPeakNanos, nanos);
+        windowRun += run;
+        windowDeferred += deferred;
+        if (windowTicks >= STATS_WINDOW) {
+            lastWindow = new Stats(windowTicks, windowNanos / windowTicks, windowPeakNanos,
+                    (double) windowRun / windowTicks, (double) windowDeferred / windowTicks);
+            windowTicks = 0;
+            windowNanos = 0L;
+            windowPeakNanos = 0L;
+            windowRun = 0L;
+            windowDeferred = 0L;
+        }
+    }
+
+    private static void reset() {
+        for (AutomatonEntity automaton : queue) {
+            automaton.setScheduled(false);
+        }
+        queue.clear();
+        quotas.clear();
+        wheel = null;
+        lastTickNanos = 0L;
+        lastTickRun = 0;
+        lastTickDeferred = 0;
+        lastTickThrottled = 0;
+        windowTicks = 0;
+        windowNanos = 0L;
+        windowPeakNanos = 0L;
+        windowRun = 0L;
+        windowDeferred = 0L;
+        lastWindow = new Stats(0, 0L, 0L, 0.0, 0.0);
+    }
+
+    // --- Stats ---
+
+    public static long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public static int getLastTickRun() {
+        return lastTickRun;
+    }
+
+    public static int getLastTickDeferred() {
+        return lastTickDeferred;
+    }
+
+    public static int getLastTickThrottled() {
+        return lastTickThrottled;
+    }
+
+    public static OwnerQuotas getQuotas() {
+        return quotas;
+    }
+
+    public static int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Averages over the most recently completed {@link #STATS_WINDOW}-tick window.
+     */
+    public static Stats getWindowStats() {
+        return lastWindow;
+    }
+}
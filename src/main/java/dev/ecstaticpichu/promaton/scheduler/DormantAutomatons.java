@@ -0,0 +1,165 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.saveddata.SavedDataType;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Per-dimension store of {@link DormantRecord}s, saved with the world. Program images are kept
+ * once per distinct program rather than once per automaton.
+ */
+public final class DormantAutomatons extends SavedData {
+
+    private static final Codec<DormantAutomatons> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            DormantRecord.CODEC.listOf().fieldOf("automatons").forGetter(data -> List.copyOf(data.records.values())),
+            Codec.unboundedMap(Codec.STRING, Codec.BYTE_BUFFER).fieldOf("programs").forGetter(DormantAutomatons::encodeImages)
+    ).apply(instance, DormantAutomatons::new));
+
+    public static final SavedDataType<DormantAutomatons> TYPE = new SavedDataType<>(
+            ProgrammableAutomatons.MOD_ID + "_dormant", DormantAutomatons::new, CODEC, null);
+
+    private final Map<UUID, DormantRecord> records = new HashMap<>();
+    private final Map<Long, byte[]> images = new HashMap<>();
+    // Decoded images, rebuilt lazily after a load
+    private final Map<Long, CompiledProgram> programs = new HashMap<>();
+    private final PriorityQueue<DormantRecord> due = new PriorityQueue<>(Comparator.comparingLong(DormantRecord::getNextWake));
+
+    public DormantAutomatons() {
+    }
+
+    private DormantAutomatons(List<DormantRecord> records, Map<String, ByteBuffer> images) {
+        for (DormantRecord record : records) {
+            this.records.put(record.getId(), record);
+            this.enqueue(record);
+        }
+        images.forEach((hash, image) -> {
+            byte[] bytes = new byte[image.remaining()];
+            image.duplicate().get(bytes);
+            this.images.put(Long.parseUnsignedLong(hash, 16), bytes);
+        });
+    }
+
+    public static DormantAutomatons get(ServerLevel level) {
+        return level.getDataStorage().computeIfAbsent(TYPE);
+    }
+
+    // --- Records ---
+
+    /**
+     * Parks {@code record} to run on {@code program}. Records share one image per source text, so
+     * a record whose program differs from the one already kept for its text, as a book carrying a
+     * hand-made image can, is not parked; its entity keeps its own state until it loads again.
+     */
+    public void add(DormantRecord record, CompiledProgram program) {
+        this.remove(record.getId());
+        long hash = program.getSourceHash();
+        byte[] image = program.toImage();
+        byte[] kept = this.images.get(hash);
+        if (kept != null && !Arrays.equals(kept, image)) {
+            if (this.isInUse(hash)) {
+                return;
+            }
+            this.programs.remove(hash);
+        }
+        this.images.put(hash, image);
+        this.programs.putIfAbsent(hash, program);
+        this.records.put(record.getId(), record);
+        this.enqueue(record);
+        this.setDirty();
+    }
+
+    private boolean isInUse(long hash) {
+        for (DormantRecord record : this.records.values()) {
+            if (record.getState().getSourceHash() == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    public DormantRecord remove(UUID id) {
+        DormantRecord record = this.records.remove(id);
+        if (record != null) {
+            this.due.remove(record);
+            this.setDirty();
+        }
+        return record;
+    }
+
+    public int size() {
+        return this.records.size();
+    }
+
+    // --- Scheduling ---
+
+    /**
+     * Takes the next record due at or before {@code now} out of the queue; hand it back with
+     * {@link #reschedule} once it has been stepped.
+     */
+    @Nullable
+    DormantRecord pollDue(long now) {
+        DormantRecord next = this.due.peek();
+        return next != null && next.getNextWake() <= now ? this.due.poll() : null;
+    }
+
+    void reschedule(DormantRecord record, long nextWake) {
+        record.setNextWake(nextWake);
+        if (this.records.get(record.getId()) == record) {
+            this.enqueue(record);
+        }
+        this.setDirty();
+    }
+
+    private void enqueue(DormantRecord record) {
+        if (record.getNextWake() != DormantRecord.NEVER) {
+            this.due.add(record);
+        }
+    }
+
+    @Nullable
+    CompiledProgram getProgram(long hash) {
+        CompiledProgram program = this.programs.get(hash);
+        if (program == null && this.images.containsKey(hash)) {
+            try {
+                program = CompiledProgram.fromImage(this.images.get(hash));
+                this.programs.put(hash, program);
+            } catch (IOException e) {
+                // From an older image version; the record waits for its entity instead
+                this.images.remove(hash);
+            }
+        }
+        return program;
+    }
+
+    private Map<String, ByteBuffer> encodeImages() {
+        Set<Long> used = new HashSet<>();
+        for (DormantRecord record : this.records.values()) {
+            used.add(record.getState().getSourceHash());
+        }
+        Map<String, ByteBuffer> encoded = new HashMap<>();
+        this.images.forEach((hash, image) -> {
+            if (used.contains(hash)) {
+                encoded.put(Long.toHexString(hash), ByteBuffer.wrap(image));
+            }
+        });
+        return encoded;
+    }
+}
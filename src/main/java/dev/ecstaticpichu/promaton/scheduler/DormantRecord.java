@@ -0,0 +1,149 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.program.ProgramState;
+import net.minecraft.core.UUIDUtil;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * What is left of an automaton while its chunk is unloaded: enough to keep its program running
+ * (state, controller, and a per-item digest of the inventory for HAS conditions) and to hand the
+ * advanced state back when the entity loads again.
+ */
+public final class DormantRecord {
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private static final Codec<ProgramState.Phase> PHASE_CODEC = Codec.STRING.xmap(
+            name -> {
+                try {
+                    return ProgramState.Phase.valueOf(name);
+                } catch (IllegalArgumentException e) {
+                    return ProgramState.Phase.RUNNING;
+                }
+            },
+            ProgramState.Phase::name);
+
+    private static final Codec<ProgramState> STATE_CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.LONG.fieldOf("hash").forGetter(ProgramState::getSourceHash),
+            Codec.INT.fieldOf("pc").forGetter(ProgramState::getPc),
+            Codec.INT_STREAM.xmap(IntStream::toArray, Arrays::stream)
+                    .fieldOf("loops").forGetter(ProgramState::getLoopCounters),
+            Codec.INT.fieldOf("return_pc").forGetter(ProgramState::getReturnPc),
+            Codec.INT.fieldOf("atomic").forGetter(ProgramState::getAtomicDepth),
+            Codec.LONG.fieldOf("wait_until").forGetter(ProgramState::getWaitUntil),
+            Codec.LONG.fieldOf("deadline").forGetter(ProgramState::getDeadline),
+            Codec.BOOL.fieldOf("task_active").forGetter(ProgramState::isTaskActive),
+            PHASE_CODEC.fieldOf("phase").forGetter(ProgramState::getPhase),
+            Codec.INT.fieldOf("triggers").forGetter(ProgramState::getPendingTriggers)
+    ).apply(instance, (hash, pc, loops, returnPc, atomic, waitUntil, deadline, taskActive, phase, triggers) -> {
+        ProgramState state = new ProgramState();
+        state.setSourceHash(hash);
+        state.setPc(pc);
+        state.setLoopCounters(loops);
+        state.setReturnPc(returnPc);
+        state.setAtomicDepth(atomic);
+        state.setWaitUntil(waitUntil);
+        state.setDeadline(deadline);
+        state.setTaskActive(taskActive);
+        state.setPhase(phase);
+        state.setPendingTriggers(triggers);
+        return state;
+    }));
+
+    public static final Codec<DormantRecord> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            UUIDUtil.CODEC.fieldOf("id").forGetter(record -> record.id),
+            Codec.LONG.fieldOf("controller").forGetter(record -> record.controller),
+            STATE_CODEC.fieldOf("state").forGetter(record -> record.state),
+            Codec.unboundedMap(BuiltInRegistries.ITEM.byNameCodec(), Codec.INT).fieldOf("inventory").forGetter(record -> record.inventory),
+            Codec.BOOL.fieldOf("inventory_full").forGetter(record -> record.inventoryFull),
+            Codec.FLOAT.fieldOf("health").forGetter(record -> record.health),
+            Codec.LONG.fieldOf("next_wake").forGetter(record -> record.nextWake)
+    ).apply(instance, DormantRecord::new));
+
+    private final UUID id;
+    private final long controller;
+    private final ProgramState state;
+    private final Map<Item, Integer> inventory;
+    private final boolean inventoryFull;
+    private final float health;
+    private long nextWake;
+
+    private DormantRecord(UUID id, long controller, ProgramState state, Map<Item, Integer> inventory,
+                          boolean inventoryFull, float health, long nextWake) {
+        this.id = id;
+        this.controller = controller;
+        this.state = state;
+        this.inventory = inventory;
+        this.inventoryFull = inventoryFull;
+        this.health = health;
+        this.nextWake = nextWake;
+    }
+
+    /**
+     * Snapshots an automaton that is about to unload. Its program state is copied, so the entity's
+     * own saved data stays as it was.
+     */
+    public static DormantRecord of(AutomatonEntity automaton, long controller, long now) {
+        ProgramState state = new ProgramState();
+        state.copyFrom(automaton.getBrain().getState());
+        Map<Item, Integer> inventory = new LinkedHashMap<>();
+        for (Item item : automaton.getInventoryIndex().getItems()) {
+            inventory.put(item, automaton.getInventoryIndex().count(item));
+        }
+        return new DormantRecord(automaton.getUUID(), controller, state, inventory,
+                automaton.isInventoryFull(), automaton.getHealth(), now);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    /**
+     * Packed position of the controller the automaton is bound to.
+     */
+    public long getController() {
+        return controller;
+    }
+
+    public ProgramState getState() {
+        return state;
+    }
+
+    public int count(Item item) {
+        return inventory.getOrDefault(item, 0);
+    }
+
+    public Iterable<Item> getItems() {
+        return inventory.keySet();
+    }
+
+    public boolean isInventoryFull() {
+        return inventoryFull;
+    }
+
+    public float getHealth() {
+        return health;
+    }
+
+    /**
+     * Game time the record next needs a step, or {@link #NEVER} while it is halted or waiting on an
+     * action only the real entity can perform.
+     */
+    public long getNextWake() {
+        return nextWake;
+    }
+
+    public void setNextWake(long nextWake) {
+        this.nextWake = nextWake;
+    }
+}
@@ -0,0 +1,202 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import dev.ecstaticpichu.promaton.ProgrammableAutomatons;
+import dev.ecstaticpichu.promaton.block.AutomatonControllerBlockEntity;
+import dev.ecstaticpichu.promaton.entity.AutomatonBrain;
+import dev.ecstaticpichu.promaton.entity.AutomatonEntity;
+import dev.ecstaticpichu.promaton.entity.ItemFilters;
+import dev.ecstaticpichu.promaton.program.CompiledProgram;
+import dev.ecstaticpichu.promaton.program.Condition;
+import dev.ecstaticpichu.promaton.program.Opcode;
+import dev.ecstaticpichu.promaton.program.ProgramCompiler;
+import dev.ecstaticpichu.promaton.program.ProgramHost;
+import dev.ecstaticpichu.promaton.program.ProgramState;
+import dev.ecstaticpichu.promaton.program.ProgramVM;
+import dev.ecstaticpichu.promaton.program.TaskStatus;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.item.Item;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps programs of automatons in unloaded chunks running on their {@link DormantRecord}s alone.
+ *
+ * <p>When an automaton's chunk unloads its state is copied into the dimension's
+ * {@link DormantAutomatons}. From then on only control flow runs: WAIT, SLEEP and WAKE count
+ * down, loops and IF branches are taken against the inventory digest, and triggers are handled.
+ * The first action that needs the world stops the record until the chunk loads again, unless its
+ * {@code until:} time runs out first. On load the entity takes over the advanced state.
+ */
+public final class DormantScheduler {
+
+    private static final int MAX_STEPS_PER_TICK = 256;
+
+    private DormantScheduler() {
+    }
+
+    public static void initialize() {
+        ProgrammableAutomatons.LOGGER.info("Registering Dormant Scheduler for " + ProgrammableAutomatons.MOD_ID);
+        ServerEntityEvents.ENTITY_UNLOAD.register((entity, level) -> {
+            if (entity instanceof AutomatonEntity automaton
+                    && entity.getRemovalReason() == Entity.RemovalReason.UNLOADED_TO_CHUNK) {
+                sleep(automaton, level);
+            }
+        });
+        ServerEntityEvents.ENTITY_LOAD.register((entity, level) -> {
+            if (entity instanceof AutomatonEntity automaton) {
+                rehydrate(automaton, level);
+            }
+        });
+        ServerTickEvents.END_SERVER_TICK.register(DormantScheduler::runTick);
+    }
+
+    private static void sleep(AutomatonEntity automaton, ServerLevel level) {
+        int[] bound = automaton.getBoundController();
+        CompiledProgram program = automaton.getBrain().getProgram();
+        if (bound == null || program == null || automaton.getCompanionOf() != null
+                || !automaton.getBrain().getState().belongsTo(program)) {
+            return;
+        }
+        long controller = BlockPos.asLong(bound[0], bound[1], bound[2]);
+        DormantAutomatons.get(level).add(DormantRecord.of(automaton, controller, level.getGameTime()), program);
+    }
+
+    private static void rehydrate(AutomatonEntity automaton, ServerLevel level) {
+        DormantRecord record = DormantAutomatons.get(level).remove(automaton.getUUID());
+        // The entity's own save is older; only take over a state for the same program
+        if (record != null && record.getState().getSourceHash() == automaton.getBrain().getState().getSourceHash()) {
+            automaton.getBrain().restore(record.getState());
+        }
+    }
+
+    public static int getDormantCount(MinecraftServer server) {
+        int count = 0;
+        for (ServerLevel level : server.getAllLevels()) {
+            count += DormantAutomatons.get(level).size();
+        }
+        return count;
+    }
+
+    // --- Tick ---
+
+    private static void runTick(MinecraftServer server) {
+        for (ServerLevel level : server.getAllLevels()) {
+            DormantAutomatons data = DormantAutomatons.get(level);
+            if (data.size() == 0) {
+                continue;
+            }
+            long now = level.getGameTime();
+            Host host = new Host(level, now);
+            for (int steps = 0; steps < MAX_STEPS_PER_TICK; steps++) {
+                DormantRecord record = data.pollDue(now);
+                if (record == null) {
+                    break;
+                }
+                data.reschedule(record, step(data, record, host));
+            }
+        }
+    }
+
+    /**
+     * @return the game time the record is next due
+     */
+    private static long step(DormantAutomatons data, DormantRecord record, Host host) {
+        ProgramState state = record.getState();
+        CompiledProgram program = data.getProgram(state.getSourceHash());
+        if (program == null || !state.belongsTo(program)) {
+            return DormantRecord.NEVER;
+        }
+        BlockPos controllerPos = BlockPos.of(record.getController());
+        if (host.level.isLoaded(controllerPos)
+                && host.level.getBlockEntity(controllerPos) instanceof AutomatonControllerBlockEntity controller
+                && controller.getCompiledProgram() != program) {
+            // The book was changed or taken out; the entity sorts that out once it is back
+            return DormantRecord.NEVER;
+        }
+
+        host.record = record;
+        ProgramVM.step(program, state, host, AutomatonBrain.MAX_INSTRUCTIONS_PER_TICK);
+        if (state.getPhase() == ProgramState.Phase.HALTED) {
+            return DormantRecord.NEVER;
+        }
+        if (state.getWaitUntil() != ProgramState.NO_TIME) {
+            return state.getWaitUntil();
+        }
+        if (state.isTaskActive()) {
+            return state.getDeadline() != ProgramState.NO_TIME ? state.getDeadline() : DormantRecord.NEVER;
+        }
+        return host.now + 1;
+    }
+
+    /**
+     * Answers the VM from the record: conditions from the digest, and every action blocks.
+     */
+    private static final class Host implements ProgramHost {
+        private final ServerLevel level;
+        private final long now;
+        private final Map<CompiledProgram, ItemFilters> filters = new IdentityHashMap<>();
+        private DormantRecord record;
+
+        private Host(ServerLevel level, long now) {
+            this.level = level;
+            this.now = now;
+        }
+
+        @Override
+        public long getGameTime() {
+            return now;
+        }
+
+        @Override
+        public long getDayTime() {
+            return level.getDayTime();
+        }
+
+        @Override
+        public boolean testCondition(CompiledProgram program, Condition condition) {
+            boolean result = switch (condition.kind()) {
+                case HAS -> this.count(program, condition.arg()) >= condition.amount();
+                case INVENTORY_FULL -> record.isInventoryFull();
+                case HEALTH_BELOW -> record.getHealth() < condition.arg();
+                case TIME_BEFORE -> Math.floorMod(this.getDayTime(), (long) ProgramCompiler.DAY_LENGTH) < condition.arg();
+                case REDSTONE -> {
+                    BlockPos controller = BlockPos.of(record.getController());
+                    yield level.isLoaded(controller) && level.hasNeighborSignal(controller);
+                }
+            };
+            return result != condition.negated();
+        }
+
+        private int count(CompiledProgram program, int filter) {
+            ItemFilters itemFilters = this.filters.computeIfAbsent(program, ItemFilters::new);
+            int count = 0;
+            for (Item item : record.getItems()) {
+                if (itemFilters.matches(filter, item)) {
+                    count += record.count(item);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public TaskStatus startTask(CompiledProgram program, ProgramState state, Opcode op, int a, int b, int c) {
+            // Actions need the entity in a loaded world; hold here until it is back
+            return TaskStatus.RUNNING;
+        }
+
+        @Override
+        public TaskStatus tickTask() {
+            return TaskStatus.RUNNING;
+        }
+
+        @Override
+        public void cancelTask() {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import dev.ecstaticpichu.promaton.config.ModConfig;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Fair-share accounting of automaton CPU time and VM instructions per owning player.
+ *
+ * <p>Every owner has a token bucket for nanoseconds and one for instructions, refilled each tick
+ * and capped at {@code ownerBurstTicks} ticks' worth. Running an automaton charges its owner; an
+ * owner whose bucket is overdrawn has their automatons deferred until the refill catches up, so a
+ * heavy owner is slowed down rather than stopped.
+ */
+public final class OwnerQuotas {
+
+    // Bucket for automatons whose owner is not known (controller never placed by a player)
+    public static final UUID UNOWNED = new UUID(0L, 0L);
+
+    private static final int IDLE_EVICT_TICKS = 1200;
+
+    private final Map<UUID, Account> accounts = new HashMap<>();
+    private long tick = 0L;
+    private long nanoShare = 0L;
+    private long instructionShare = 0L;
+
+    public static final class Account {
+        private long nanoTokens;
+        private long instructionTokens;
+        private long lastActiveTick;
+        private boolean throttled = false;
+
+        // Lifetime totals, for /promaton quotas
+        private long totalNanos = 0L;
+        private long totalInstructions = 0L;
+        private long deferrals = 0L;
+
+        private Account(long nanoTokens, long instructionTokens, long tick) {
+            this.nanoTokens = nanoTokens;
+            this.instructionTokens = instructionTokens;
+            this.lastActiveTick = tick;
+        }
+
+        public boolean isOverdrawn() {
+            return nanoTokens < 0 || instructionTokens < 0;
+        }
+
+        public boolean isThrottled() {
+            return throttled;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getTotalInstructions() {
+            return totalInstructions;
+        }
+
+        public long getDeferrals() {
+            return deferrals;
+        }
+    }
+
+    /**
+     * Refills every bucket for a new tick. With {@code ownerQuotaMs} at 0 the scheduler budget is
+     * split evenly between the owners that ran automatons during the previous tick.
+     */
+    public void beginTick(long budgetNanos) {
+        this.tick++;
+        ModConfig config = ModConfig.get();
+        int activeOwners = 0;
+        for (Account account : this.accounts.values()) {
+            if (account.lastActiveTick >= this.tick - 1) {
+                activeOwners++;
+            }
+        }
+        this.nanoShare = config.ownerQuotaMs > 0
+                ? (long) (config.ownerQuotaMs * 1_000_000L)
+                : budgetNanos / Math.max(1, activeOwners);
+        this.instructionShare = config.ownerInstructionQuota;
+        long burst = Math.max(1, config.ownerBurstTicks);
+
+        Iterator<Account> iterator = this.accounts.values().iterator();
+        while (iterator.hasNext()) {
+            Account account = iterator.next();
+            account.nanoTokens = Math.min(account.nanoTokens + this.nanoShare, this.nanoShare * burst);
+            account.instructionTokens = Math.min(account.instructionTokens + this.instructionShare, this.instructionShare * burst);
+            if (account.throttled && !account.isOverdrawn()) {
+                account.throttled = false;
+            }
+            if (this.tick - account.lastActiveTick > IDLE_EVICT_TICKS && !account.isOverdrawn()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public Account account(@Nullable UUID owner) {
+        return this.accounts.computeIfAbsent(owner == null ? UNOWNED : owner,
+                key -> new Account(this.nanoShare, this.instructionShare, this.tick));
+    }
+
+    public void charge(Account account, long nanos, int instructions) {
+        account.nanoTokens -= nanos;
+        account.instructionTokens -= instructions;
+        account.totalNanos += nanos;
+        account.totalInstructions += instructions;
+        account.lastActiveTick = this.tick;
+    }
+
+    /**
+     * Records that one of the owner's automatons was deferred this tick.
+     */
+    public void throttle(Account account) {
+        account.lastActiveTick = this.tick;
+        account.deferrals++;
+        account.throttled = true;
+    }
+
+    public Map<UUID, Account> getAccounts() {
+        return Collections.unmodifiableMap(this.accounts);
+    }
+
+    public void clear() {
+        this.accounts.clear();
+        this.tick = 0L;
+    }
+}
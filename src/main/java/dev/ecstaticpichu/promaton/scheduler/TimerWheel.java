@@ -0,0 +1,153 @@
+package dev.ecstaticpichu.promaton.scheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel keyed by game time. Four levels of 64 slots cover about 9.7 in-game
+ * days at one-tick resolution; later deadlines wait in an overflow list. Scheduling and cancelling
+ * are O(1) and advancing one tick only touches the slot that comes due, plus an occasional cascade
+ * from a coarser level, no matter how many timers are pending.
+ */
+public final class TimerWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final Timer<T>[][] wheels;
+    private Timer<T> overflow = null;
+    private long currentTime;
+    private int size = 0;
+
+    public static final class Timer<T> {
+        private final T item;
+        private final long deadline;
+        private boolean cancelled = false;
+        private Timer<T> next = null;
+
+        private Timer(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long currentTime) {
+        this.wheels = new Timer[LEVELS][SLOTS];
+        this.currentTime = currentTime;
+    }
+
+    public long getCurrentTime() {
+        return currentTime;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules {@code item} to fire on the first {@link #advance} that reaches {@code deadline};
+     * deadlines that already passed fire on the next tick.
+     */
+    public Timer<T> schedule(T item, long deadline) {
+        Timer<T> timer = new Timer<>(item, deadline);
+        this.insert(timer, this.currentTime + 1);
+        this.size++;
+        return timer;
+    }
+
+    /**
+     * Cancelled timers are dropped lazily when their slot is reached.
+     */
+    public void cancel(Timer<T> timer) {
+        if (!timer.cancelled) {
+            timer.cancelled = true;
+            this.size--;
+        }
+    }
+
+    /**
+     * Moves the wheel forward tick by tick up to {@code now}, handing every due item to {@code fire}.
+     */
+    public void advance(long now, Consumer<T> fire) {
+        while (this.currentTime < now) {
+            long time = ++this.currentTime;
+
+            if ((time & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+                Timer<T> pending = this.overflow;
+                this.overflow = null;
+                this.reinsert(pending);
+            }
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                if ((time & ((1L << (BITS * level)) - 1)) == 0) {
+                    int index = (int) ((time >> (BITS * level)) & MASK);
+                    Timer<T> pending = this.wheels[level][index];
+                    this.wheels[level][index] = null;
+                    this.reinsert(pending);
+                }
+            }
+
+            int index = (int) (time & MASK);
+            Timer<T> due = this.wheels[0][index];
+            this.wheels[0][index] = null;
+            while (due != null) {
+                Timer<T> next = due.next;
+                due.next = null;
+                if (!due.cancelled) {
+                    if (due.deadline <= time) {
+                        due.cancelled = true;
+                        this.size--;
+                        fire.accept(due.item);
+                    } else {
+                        this.insert(due, time);
+                    }
+                }
+                due = next;
+            }
+        }
+    }
+
+    private void reinsert(Timer<T> timer) {
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.next = null;
+            if (!timer.cancelled) {
+                // Cascading happens before the current tick's slot is read, so due timers still fire now
+                this.insert(timer, this.currentTime);
+            }
+            timer = next;
+        }
+    }
+
+    /**
+     * @param earliest deadlines before this are treated as due at this time
+     */
+    private void insert(Timer<T> timer, long earliest) {
+        long deadline = Math.max(timer.deadline, earliest);
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * (level + 1);
+            // The finest level whose coarser digits still match the current time
+            if ((deadline >> shift) == (this.currentTime >> shift)) {
+                int index = (int) ((deadline >> (BITS * level)) & MASK);
+                timer.next = this.wheels[level][index];
+                this.wheels[level][index] = timer;
+                return;
+            }
+        }
+        timer.next = this.overflow;
+        this.overflow = timer;
+    }
+}